@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.benchmark;
+
+import com.jprocessing.entities.JpCustomer;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * External customer stub
+ *
+ * @author rumatoest
+ */
+public class BenchmarkCustomer implements JpCustomer {
+
+    private final long id;
+
+    public BenchmarkCustomer(long id) {
+        this.id = id;
+    }
+
+    @Override
+    public Long getBillingId() {
+        return id;
+    }
+
+    @Override
+    public boolean checkPassword(String password) {
+        return false;
+    }
+
+    @Override
+    public boolean isActive() {
+        return true;
+    }
+
+    @Override
+    public String getEmail() {
+        return "customer" + id + "@example.com";
+    }
+
+    @Override
+    public Set<String> getGroups() {
+        return Collections.singleton(BenchmarkDatabase.GROUPS[(int)(id % BenchmarkDatabase.GROUPS.length)]);
+    }
+
+    @Override
+    public String getLogin() {
+        return "customer" + id;
+    }
+
+    @Override
+    public String getShortInfo() {
+        return "Customer " + id;
+    }
+}
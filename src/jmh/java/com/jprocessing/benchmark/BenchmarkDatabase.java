@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.benchmark;
+
+import com.jprocessing.entities.Customer;
+import com.jprocessing.entities.Invoice;
+import com.jprocessing.entities.InvoiceItem;
+import com.jprocessing.entities.Payment;
+import com.jprocessing.entities.Product;
+import com.jprocessing.entities.ProductPrice;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+/**
+ * Embedded H2 database with test data shared by benchmarks.
+ * Each instance creates new in-memory database.
+ *
+ * @author rumatoest
+ */
+public class BenchmarkDatabase {
+
+    public static final String PERSISTENCE_UNIT = "jprocessing-bench";
+
+    /**
+     * Same database with second level cache enabled for cacheable entities
+     */
+    public static final String PERSISTENCE_UNIT_CACHED = "jprocessing-bench-cached";
+
+    public static final int PRODUCTS = 1000;
+
+    public static final int PRICES_PER_PRODUCT = 4;
+
+    public static final int CUSTOMERS = 1000;
+
+    public static final String[] GROUPS = {"RETAIL", "WHOLESALE", "VIP", "PARTNER"};
+
+    private static final AtomicLong sequence = new AtomicLong();
+
+    private final EntityManagerFactory emf;
+
+    public BenchmarkDatabase() {
+        this(PERSISTENCE_UNIT);
+    }
+
+    public BenchmarkDatabase(String persistenceUnit) {
+        emf = Persistence.createEntityManagerFactory(persistenceUnit);
+    }
+
+    public EntityManagerFactory getEmf() {
+        return emf;
+    }
+
+    public void close() {
+        emf.close();
+    }
+
+    /**
+     * Fill database with products, prices and customers.
+     */
+    public BenchmarkDatabase populate() {
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        for (int i = 1; i <= PRODUCTS; i++) {
+            Product p = product(i);
+            em.persist(p);
+            for (int k = 0; k < PRICES_PER_PRODUCT; k++) {
+                em.persist(price(p, k));
+            }
+            if (i % 50 == 0) {
+                em.flush();
+                em.clear();
+            }
+        }
+        for (long i = 1; i <= CUSTOMERS; i++) {
+            em.persist(new Customer(new BenchmarkCustomer(i)));
+        }
+        em.getTransaction().commit();
+        em.close();
+        return this;
+    }
+
+    public static String sku(int i) {
+        return "SKU-" + i;
+    }
+
+    public static Product product(int i) {
+        Product p = new Product();
+        p.setPk((long)i);
+        p.setSku(sku(i));
+        p.setName("Product " + i);
+        p.setDescription("Benchmark product " + i + " description");
+        return p;
+    }
+
+    public static ProductPrice price(Product p, int tier) {
+        ProductPrice pp = new ProductPrice();
+        pp.setProduct(p);
+        pp.setPriority(tier % 2);
+        pp.setMinQuantity(tier * 10);
+        pp.setValue(100 - tier * 5);
+        if (tier == PRICES_PER_PRODUCT - 1) {
+            pp.setGroups(GROUPS[(int)(p.getPk() % GROUPS.length)]);
+        }
+        return pp;
+    }
+
+    public static Payment payment() {
+        Payment p = new Payment();
+        p.setStartTime(Calendar.getInstance());
+        p.setStatus(Payment.STATUS.PENDING);
+        p.setAmount(BigDecimal.valueOf(10));
+        p.setCurrency("USD");
+        p.setPaymentProcessor("benchmark");
+        p.setTransactionId("bench-" + System.nanoTime() + "-" + sequence.incrementAndGet());
+        return p;
+    }
+
+    public static List<Payment> payments(int count) {
+        List<Payment> l = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            l.add(payment());
+        }
+        return l;
+    }
+
+    /**
+     * Create detached invoice with provided number of items
+     */
+    public static Invoice invoice(int items) {
+        Invoice inv = new Invoice();
+        inv.setCreateTime(Calendar.getInstance());
+        inv.setItems(new HashSet<InvoiceItem>());
+        for (int i = 0; i < items; i++) {
+            InvoiceItem it = new InvoiceItem();
+            it.setPk((long)i + 1);
+            it.setInvoice(inv);
+            it.setProduct(product(i + 1));
+            it.setProductPrice(BigDecimal.valueOf(1999 + i, 2));
+            it.setQuantity(1 + i % 3);
+            it.setCurrency("USD");
+            inv.getItems().add(it);
+        }
+        return inv;
+    }
+}
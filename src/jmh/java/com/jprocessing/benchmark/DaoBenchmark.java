@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.benchmark;
+
+import com.jprocessing.core.catalog.ProductCatalog;
+import com.jprocessing.dao.impl.CustomerDaoImpl;
+import com.jprocessing.dao.impl.PaymentDaoImpl;
+import com.jprocessing.dao.impl.ProductDaoImpl;
+import com.jprocessing.dao.impl.ProductPriceDaoImpl;
+import com.jprocessing.entities.Customer;
+import com.jprocessing.entities.Payment;
+import com.jprocessing.entities.Product;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * DAO hot paths: single vs batched persist, primary key and SKU lookups.
+ * Throughput is measured per entity.
+ *
+ * @author rumatoest
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DaoBenchmark {
+
+    static final int BATCH = 100;
+
+    BenchmarkDatabase db;
+
+    PaymentDaoImpl paymentDao;
+
+    CustomerDaoImpl customerDao;
+
+    ProductDaoImpl productDao;
+
+    ProductCatalog catalog;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        db = new BenchmarkDatabase().populate();
+        paymentDao = new PaymentDaoImpl(db.getEmf());
+        customerDao = new CustomerDaoImpl(db.getEmf());
+        productDao = new ProductDaoImpl(db.getEmf());
+        catalog = new ProductCatalog(productDao, new ProductPriceDaoImpl(db.getEmf()));
+        catalog.reload();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        db.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void persistSingle() {
+        for (Payment p : BenchmarkDatabase.payments(BATCH)) {
+            paymentDao.persist(p);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void persistBatched() {
+        paymentDao.persistAll(BenchmarkDatabase.payments(BATCH));
+    }
+
+    @Benchmark
+    public Customer getByPk() {
+        return customerDao.getByPk(randomCustomer());
+    }
+
+    @Benchmark
+    public Customer getOrCreate() {
+        return customerDao.getOrCreate(new BenchmarkCustomer(randomCustomer()));
+    }
+
+    @Benchmark
+    public Product getBySkuDao() {
+        return productDao.getBySku(BenchmarkDatabase.sku(randomProduct()));
+    }
+
+    @Benchmark
+    public Product getBySkuCatalog() {
+        return catalog.getBySku(BenchmarkDatabase.sku(randomProduct()));
+    }
+
+    static long randomCustomer() {
+        return 1 + ThreadLocalRandom.current().nextInt(BenchmarkDatabase.CUSTOMERS);
+    }
+
+    static int randomProduct() {
+        return 1 + ThreadLocalRandom.current().nextInt(BenchmarkDatabase.PRODUCTS);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.benchmark;
+
+import com.jprocessing.dao.impl.CustomerDaoImpl;
+import com.jprocessing.dao.impl.ProductDaoImpl;
+import com.jprocessing.entities.Customer;
+import com.jprocessing.entities.Product;
+import java.util.concurrent.TimeUnit;
+import org.hibernate.jpa.HibernateEntityManagerFactory;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Repeated primary key lookups of read-mostly entities with and without
+ * second level cache. SQL statements per lookup are reported as auxiliary counter,
+ * with warm cache it must be zero.
+ *
+ * @author rumatoest
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntityCacheBenchmark {
+
+    @Param({BenchmarkDatabase.PERSISTENCE_UNIT, BenchmarkDatabase.PERSISTENCE_UNIT_CACHED})
+    String persistenceUnit;
+
+    BenchmarkDatabase db;
+
+    Statistics stats;
+
+    CustomerDaoImpl customerDao;
+
+    ProductDaoImpl productDao;
+
+    /**
+     * Average number of SQL statements per benchmark operation
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Executed {
+
+        public double statementsPerOp;
+
+        private long ops;
+
+        private long statements;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            ops = 0;
+            statements = 0;
+        }
+
+        void record(long executed) {
+            ops++;
+            statements += executed;
+            statementsPerOp = (double)statements / ops;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        db = new BenchmarkDatabase(persistenceUnit).populate();
+        stats = ((HibernateEntityManagerFactory)db.getEmf()).getSessionFactory().getStatistics();
+        customerDao = new CustomerDaoImpl(db.getEmf());
+        productDao = new ProductDaoImpl(db.getEmf());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        db.close();
+    }
+
+    @Benchmark
+    public Customer customerByPk(Executed e) {
+        long before = stats.getPrepareStatementCount();
+        Customer c = customerDao.getByPk(DaoBenchmark.randomCustomer());
+        e.record(stats.getPrepareStatementCount() - before);
+        return c;
+    }
+
+    @Benchmark
+    public Product productByPk(Executed e) {
+        long before = stats.getPrepareStatementCount();
+        Product p = productDao.getByPk((long)DaoBenchmark.randomProduct());
+        e.record(stats.getPrepareStatementCount() - before);
+        return p;
+    }
+
+    /**
+     * Lookup right after eviction, cache must be filled again with one statement
+     */
+    @Benchmark
+    public Product productByPkEvicted(Executed e) {
+        long pk = DaoBenchmark.randomProduct();
+        productDao.evictCache(pk);
+        long before = stats.getPrepareStatementCount();
+        Product p = productDao.getByPk(pk);
+        e.record(stats.getPrepareStatementCount() - before);
+        return p;
+    }
+}
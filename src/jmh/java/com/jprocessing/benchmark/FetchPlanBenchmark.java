@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.benchmark;
+
+import com.jprocessing.dao.impl.InvoiceItemDaoImpl;
+import com.jprocessing.dao.impl.LiabilityDaoImpl;
+import com.jprocessing.entities.Invoice;
+import com.jprocessing.entities.InvoiceItem;
+import com.jprocessing.entities.Liability;
+import com.jprocessing.entities.Product;
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityManager;
+import org.hibernate.Hibernate;
+import org.hibernate.jpa.HibernateEntityManagerFactory;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Liability expiry scan and invoice items scan with lazy associations,
+ * with associations opted in by entity graph and with all associations initialized
+ * the way former eager mapping did (one extra select per distinct association).
+ * Statements and entities loaded per operation are reported as auxiliary counters,
+ * run with -prof gc to compare allocated bytes.
+ *
+ * @author rumatoest
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FetchPlanBenchmark {
+
+    static final int LIABILITIES = 5000;
+
+    static final int SCAN_SIZE = 500;
+
+    static final int INVOICES = 200;
+
+    static final int ITEMS_PER_INVOICE = 20;
+
+    BenchmarkDatabase db;
+
+    Statistics stats;
+
+    LiabilityDaoImpl liabilityDao;
+
+    InvoiceItemDaoImpl itemDao;
+
+    Calendar scanFrom;
+
+    Calendar scanUntil;
+
+    long[] invoices = new long[INVOICES];
+
+    /**
+     * Average number of statements and entities loaded per benchmark operation
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Fetched {
+
+        public double statementsPerOp;
+
+        public double entitiesPerOp;
+
+        private long ops;
+
+        private long statements;
+
+        private long entities;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            ops = 0;
+            statements = 0;
+            entities = 0;
+        }
+
+        void record(Statistics stats, long statementsBefore, long entitiesBefore) {
+            ops++;
+            statements += stats.getPrepareStatementCount() - statementsBefore;
+            entities += stats.getEntityLoadCount() - entitiesBefore;
+            statementsPerOp = (double)statements / ops;
+            entitiesPerOp = (double)entities / ops;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        db = new BenchmarkDatabase().populate();
+        stats = ((HibernateEntityManagerFactory)db.getEmf()).getSessionFactory().getStatistics();
+        liabilityDao = new LiabilityDaoImpl(db.getEmf());
+        itemDao = new InvoiceItemDaoImpl(db.getEmf());
+
+        Calendar now = Calendar.getInstance();
+        scanFrom = (Calendar)now.clone();
+        scanUntil = (Calendar)now.clone();
+        scanUntil.add(Calendar.DATE, 1);
+
+        EntityManager em = db.getEmf().createEntityManager();
+        em.getTransaction().begin();
+        for (int i = 0; i < LIABILITIES; i++) {
+            Calendar expire = (Calendar)now.clone();
+            expire.add(Calendar.SECOND, 1 + i);
+            em.persist(liability(em.getReference(Product.class, productPk(i)), now, expire));
+            if (i % 50 == 0) {
+                em.flush();
+                em.clear();
+            }
+        }
+        for (int i = 0; i < INVOICES; i++) {
+            Invoice inv = new Invoice();
+            inv.setCreateTime(now);
+            inv.setTotal(BigDecimal.ZERO);
+            em.persist(inv);
+            invoices[i] = inv.getPk();
+            for (int k = 0; k < ITEMS_PER_INVOICE; k++) {
+                em.persist(item(inv, em.getReference(Product.class, productPk(i * ITEMS_PER_INVOICE + k))));
+            }
+            em.flush();
+            em.clear();
+        }
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        db.close();
+    }
+
+    @Benchmark
+    public List<Liability> liabilitiesLazy(Fetched f) {
+        long s = stats.getPrepareStatementCount(), e = stats.getEntityLoadCount();
+        List<Liability> l = liabilityDao.findExpiring(scanFrom, scanUntil, null, SCAN_SIZE);
+        f.record(stats, s, e);
+        return l;
+    }
+
+    @Benchmark
+    public List<Liability> liabilitiesGraph(Fetched f) {
+        long s = stats.getPrepareStatementCount(), e = stats.getEntityLoadCount();
+        List<Liability> l = liabilityDao.findExpiring(scanFrom, scanUntil, null, SCAN_SIZE,
+            Liability.GRAPH_PRODUCT);
+        f.record(stats, s, e);
+        return l;
+    }
+
+    @Benchmark
+    public List<Liability> liabilitiesEagerBaseline(Fetched f) {
+        long s = stats.getPrepareStatementCount(), e = stats.getEntityLoadCount();
+        EntityManager em = db.getEmf().createEntityManager();
+        try {
+            List<Liability> l = em.createQuery("SELECT l FROM Liability l"
+                + " WHERE l.expireTime > :after AND l.expireTime <= :until ORDER BY l.pk", Liability.class)
+                .setParameter("after", scanFrom)
+                .setParameter("until", scanUntil)
+                .setMaxResults(SCAN_SIZE)
+                .getResultList();
+            for (Liability li : l) {
+                Hibernate.initialize(li.getProduct());
+            }
+            f.record(stats, s, e);
+            return l;
+        } finally {
+            em.close();
+        }
+    }
+
+    @Benchmark
+    public List<InvoiceItem> itemsLazy(Fetched f) {
+        long s = stats.getPrepareStatementCount(), e = stats.getEntityLoadCount();
+        List<InvoiceItem> l = itemDao.findByInvoice(randomInvoice(), null);
+        f.record(stats, s, e);
+        return l;
+    }
+
+    @Benchmark
+    public List<InvoiceItem> itemsGraph(Fetched f) {
+        long s = stats.getPrepareStatementCount(), e = stats.getEntityLoadCount();
+        List<InvoiceItem> l = itemDao.findByInvoice(randomInvoice(), InvoiceItem.GRAPH_PRODUCT);
+        f.record(stats, s, e);
+        return l;
+    }
+
+    @Benchmark
+    public List<InvoiceItem> itemsEagerBaseline(Fetched f) {
+        long s = stats.getPrepareStatementCount(), e = stats.getEntityLoadCount();
+        EntityManager em = db.getEmf().createEntityManager();
+        try {
+            List<InvoiceItem> l = em.createQuery("SELECT i FROM InvoiceItem i"
+                + " WHERE i.invoice.pk = :invoice ORDER BY i.pk", InvoiceItem.class)
+                .setParameter("invoice", randomInvoice())
+                .getResultList();
+            for (InvoiceItem it : l) {
+                Hibernate.initialize(it.getInvoice());
+                Hibernate.initialize(it.getProduct());
+            }
+            f.record(stats, s, e);
+            return l;
+        } finally {
+            em.close();
+        }
+    }
+
+    long randomInvoice() {
+        return invoices[ThreadLocalRandom.current().nextInt(INVOICES)];
+    }
+
+    static long productPk(int i) {
+        return 1 + i % BenchmarkDatabase.PRODUCTS;
+    }
+
+    static Liability liability(Product product, Calendar created, Calendar expire) {
+        Liability l = new Liability();
+        l.setProduct(product);
+        l.setCreateTime(created);
+        l.setExpireTime(expire);
+        l.setProductPrice(BigDecimal.valueOf(1999, 2));
+        l.setQuantity(BigDecimal.ONE);
+        l.setCurrency("USD");
+        l.setPriceTotal(BigDecimal.valueOf(1999, 2));
+        return l;
+    }
+
+    static InvoiceItem item(Invoice invoice, Product product) {
+        InvoiceItem it = new InvoiceItem();
+        it.setInvoice(invoice);
+        it.setProduct(product);
+        it.setProductPrice(BigDecimal.valueOf(1999, 2));
+        it.setQuantity(1);
+        it.setCurrency("USD");
+        return it;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.benchmark;
+
+import com.jprocessing.core.invoice.InvoiceCalculator;
+import com.jprocessing.core.invoice.InvoiceTotals;
+import com.jprocessing.entities.Invoice;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Invoice totalling over detached invoice items: entity BigDecimal arithmetic
+ * against fixed point calculator, and batch recalculation.
+ *
+ * @author rumatoest
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InvoiceTotalBenchmark {
+
+    @Param({"10", "100"})
+    int items;
+
+    Invoice invoice;
+
+    List<Invoice> batch;
+
+    InvoiceCalculator calculator = new InvoiceCalculator();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        invoice = BenchmarkDatabase.invoice(items);
+        batch = new ArrayList<>(1000);
+        for (int i = 0; i < 1000; i++) {
+            batch.add(BenchmarkDatabase.invoice(items));
+        }
+    }
+
+    @Benchmark
+    public BigDecimal updateTotal() {
+        invoice.updateTotal();
+        return invoice.getTotal();
+    }
+
+    @Benchmark
+    public InvoiceTotals calculator() {
+        return calculator.apply(invoice);
+    }
+
+    @Benchmark
+    public List<Invoice> calculatorBatch() {
+        calculator.applyAll(batch);
+        return batch;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.benchmark;
+
+import com.jprocessing.core.catalog.ProductCatalog;
+import com.jprocessing.core.pricing.GroupMask;
+import com.jprocessing.core.pricing.PricingEngine;
+import com.jprocessing.dao.impl.ProductDaoImpl;
+import com.jprocessing.dao.impl.ProductPriceDaoImpl;
+import com.jprocessing.entities.ProductPrice;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Price resolution: scanning ProductPrice.isActiveFor against compiled price tiers.
+ *
+ * @author rumatoest
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PricingBenchmark {
+
+    static final int CART = 20;
+
+    static final String GROUP = BenchmarkDatabase.GROUPS[1];
+
+    BenchmarkDatabase db;
+
+    ProductCatalog catalog;
+
+    PricingEngine engine;
+
+    GroupMask groups;
+
+    long[] cartProducts = new long[CART];
+
+    double[] cartQuantities = new double[CART];
+
+    ProductPrice[] cartPrices = new ProductPrice[CART];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        db = new BenchmarkDatabase().populate();
+        catalog = new ProductCatalog(new ProductDaoImpl(db.getEmf()), new ProductPriceDaoImpl(db.getEmf()));
+        catalog.reload();
+        engine = new PricingEngine(catalog);
+        groups = engine.groupMask(Collections.singleton(GROUP));
+        for (int i = 0; i < CART; i++) {
+            cartProducts[i] = DaoBenchmark.randomProduct();
+            cartQuantities[i] = ThreadLocalRandom.current().nextInt(50);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        db.close();
+    }
+
+    @Benchmark
+    public ProductPrice isActiveForScan() {
+        List<ProductPrice> prices = catalog.getPrices(DaoBenchmark.randomProduct());
+        double quantity = ThreadLocalRandom.current().nextInt(50);
+        ProductPrice best = null;
+        for (ProductPrice pp : prices) {
+            if (pp.isActiveFor(GROUP, quantity) && (best == null || pp.getPriority() > best.getPriority())) {
+                best = pp;
+            }
+        }
+        return best;
+    }
+
+    @Benchmark
+    public ProductPrice compiledResolve() {
+        return engine.resolve(DaoBenchmark.randomProduct(), groups, ThreadLocalRandom.current().nextInt(50));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CART)
+    public ProductPrice[] compiledResolveCart() {
+        engine.resolveAll(cartProducts, cartQuantities, groups, cartPrices);
+        return cartPrices;
+    }
+}
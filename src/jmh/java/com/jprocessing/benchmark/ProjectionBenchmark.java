@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.benchmark;
+
+import com.jprocessing.dao.PaymentSummary;
+import com.jprocessing.dao.Restriction;
+import com.jprocessing.dao.impl.PaymentDaoImpl;
+import com.jprocessing.entities.Payment;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Payment listing page: full entities against summary projection.
+ * Payments have properties of typical callback size.
+ *
+ * @author rumatoest
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProjectionBenchmark {
+
+    static final int PAYMENTS = 2000;
+
+    static final int PAGE = 200;
+
+    static final Restriction<Payment> PENDING = new Restriction<Payment>() {
+
+        @Override
+        public Predicate[] build(CriteriaBuilder cb, Root<Payment> root) {
+            return new Predicate[]{cb.equal(root.get("status"), Payment.STATUS.PENDING)};
+        }
+    };
+
+    BenchmarkDatabase db;
+
+    PaymentDaoImpl paymentDao;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        db = new BenchmarkDatabase();
+        paymentDao = new PaymentDaoImpl(db.getEmf());
+        List<Payment> payments = BenchmarkDatabase.payments(PAYMENTS);
+        for (Payment p : payments) {
+            Map<String, String> props = new HashMap<>();
+            for (int i = 0; i < 20; i++) {
+                props.put("callback_field_" + i, p.getTransactionId() + "-value-" + i);
+            }
+            p.setProperties(props);
+        }
+        paymentDao.persistAll(payments);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        db.close();
+    }
+
+    @Benchmark
+    public List<Payment> entities() {
+        return paymentDao.findSlice(PENDING, PAGE, null).getContent();
+    }
+
+    @Benchmark
+    public List<PaymentSummary> summaries() {
+        return paymentDao.findSummaries(PENDING, PAGE);
+    }
+}
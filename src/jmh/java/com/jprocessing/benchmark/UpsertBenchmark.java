@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.benchmark;
+
+import com.jprocessing.dao.impl.CustomerDaoImpl;
+import com.jprocessing.dao.impl.UpsertDialect;
+import com.jprocessing.entities.Customer;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Insert-or-update of customers: find then write (getByPk + persist or merge)
+ * against JPA merge and native single statement upsert.
+ * Half of written customers already exist in database.
+ *
+ * @author rumatoest
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UpsertBenchmark {
+
+    static final int BATCH = 100;
+
+    BenchmarkDatabase db;
+
+    CustomerDaoImpl mergeDao;
+
+    CustomerDaoImpl upsertDao;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        db = new BenchmarkDatabase().populate();
+        mergeDao = new CustomerDaoImpl(db.getEmf());
+        upsertDao = new CustomerDaoImpl(db.getEmf());
+        upsertDao.setUpsertDialect(UpsertDialect.H2);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        db.close();
+    }
+
+    /**
+     * Customer that exists in database with probability 1/2
+     */
+    static Customer customer() {
+        long id = 1 + ThreadLocalRandom.current().nextInt(BenchmarkDatabase.CUSTOMERS * 2);
+        Customer c = new Customer(new BenchmarkCustomer(id));
+        c.setUpdated(Calendar.getInstance());
+        return c;
+    }
+
+    @Benchmark
+    public Customer findThenWrite() {
+        Customer c = customer();
+        if (mergeDao.getByPk(c.getPk()) == null) {
+            mergeDao.persist(c);
+        } else {
+            mergeDao.merge(c);
+        }
+        return c;
+    }
+
+    @Benchmark
+    public Customer jpaMerge() {
+        Customer c = customer();
+        mergeDao.persistOrMerge(c);
+        return c;
+    }
+
+    @Benchmark
+    public Customer nativeUpsert() {
+        Customer c = customer();
+        upsertDao.persistOrMerge(c);
+        return c;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void nativeUpsertBatch() {
+        List<Customer> l = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            l.add(customer());
+        }
+        upsertDao.persistOrMergeAll(l);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Bounded probabilistic set of strings.
+ * Answers "definitely not added" or "probably added" without locking.
+ * Filter keeps two generations of bits, when current generation gets
+ * expected number of insertions it becomes previous one and new empty
+ * generation is started. Thus memory stays fixed and only most recent
+ * keys are remembered.
+ *
+ * @author rumatoest
+ */
+public class BloomFilter {
+
+    private final int bits;
+
+    private final int hashes;
+
+    private final long capacity;
+
+    private final AtomicReference<Generation> current;
+
+    private volatile Generation previous;
+
+    /**
+     * @param capacity Expected number of insertions per generation
+     * @param falsePositiveRate Desired false positive probability (0..1)
+     */
+    public BloomFilter(long capacity, double falsePositiveRate) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be in (0,1): " + falsePositiveRate);
+        }
+        double ln2 = Math.log(2);
+        long m = (long)Math.ceil(-capacity * Math.log(falsePositiveRate) / (ln2 * ln2));
+        // round up to whole number of 64 bit words
+        m = Math.min(Integer.MAX_VALUE - 63, Math.max(64, m));
+        this.bits = (int)((m + 63) & ~63L);
+        this.hashes = Math.max(1, (int)Math.round((double)bits / capacity * ln2));
+        this.capacity = capacity;
+        this.current = new AtomicReference<>(new Generation(bits));
+        this.previous = null;
+    }
+
+    /**
+     * Add key to filter
+     */
+    public void add(String key) {
+        long h = hash(key);
+        Generation g = current.get();
+        g.set(h, hashes);
+        if (g.count.incrementAndGet() == capacity) {
+            previous = g;
+            current.compareAndSet(g, new Generation(bits));
+        }
+    }
+
+    /**
+     * Return false if key was definitely never added (or already forgotten),
+     * true if key was probably added.
+     */
+    public boolean mightContain(String key) {
+        long h = hash(key);
+        if (current.get().test(h, hashes)) {
+            return true;
+        }
+        Generation p = previous;
+        return p != null && p.test(h, hashes);
+    }
+
+    /**
+     * Remove all keys
+     */
+    public void clear() {
+        previous = null;
+        current.set(new Generation(bits));
+    }
+
+    public int getBitSize() {
+        return bits;
+    }
+
+    public int getHashCount() {
+        return hashes;
+    }
+
+    /**
+     * 64 bit FNV-1a hash with final avalanche, its halves are used for double hashing.
+     */
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Generation {
+
+        private final AtomicLongArray words;
+
+        private final int bits;
+
+        private final AtomicLong count = new AtomicLong();
+
+        Generation(int bits) {
+            this.bits = bits;
+            this.words = new AtomicLongArray(bits >>> 6);
+        }
+
+        void set(long hash, int hashes) {
+            int h1 = (int)hash;
+            int h2 = (int)(hash >>> 32);
+            for (int i = 0; i < hashes; i++) {
+                int idx = ((h1 + i * h2) & Integer.MAX_VALUE) % bits;
+                long mask = 1L << idx;
+                int w = idx >>> 6;
+                long old;
+                do {
+                    old = words.get(w);
+                    if ((old & mask) != 0) {
+                        break;
+                    }
+                } while (!words.compareAndSet(w, old, old | mask));
+            }
+        }
+
+        boolean test(long hash, int hashes) {
+            int h1 = (int)hash;
+            int h2 = (int)(hash >>> 32);
+            for (int i = 0; i < hashes; i++) {
+                int idx = ((h1 + i * h2) & Integer.MAX_VALUE) % bits;
+                if ((words.get(idx >>> 6) & (1L << idx)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.cache;
+
+import java.lang.reflect.Array;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded in-process cache with least recently used eviction and
+ * time to live for each entry. All operations are thread safe.
+ * Cache collects hit, miss and eviction counters.
+ * <p>
+ * Entries are split into segments by key hash, every segment has its own lock and
+ * access order, so lookups of different keys rarely contend. When cache is full
+ * least recently used entry of the segment that received new entry is evicted,
+ * so eviction order is approximate for the whole cache.
+ *
+ * @param <K> Key type
+ * @param <V> Value type
+ *
+ * @author rumatoest
+ */
+public class LruCache<K, V> {
+
+    private static final int MAX_SEGMENTS = 16;
+
+    private final int maxSize;
+
+    private final long ttlMillis;
+
+    private final Segment[] segments;
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxSize Maximum number of entries, least recently used entries are evicted first
+     * @param ttlMillis Entry time to live in milliseconds, zero or negative means no expiration
+     */
+    public LruCache(int maxSize, long ttlMillis) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        int count = 1;
+        while (count < MAX_SEGMENTS && count * 2 <= maxSize) {
+            count *= 2;
+        }
+        this.segments = newSegments(count);
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(Math.min(maxSize / count, 1024));
+        }
+    }
+
+    /**
+     * Generic array can not be created directly, segments are never exposed
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Segment[] newSegments(int count) {
+        return (Segment[])Array.newInstance(Segment.class, count);
+    }
+
+    private int segmentIndex(Object key) {
+        int h = key == null ? 0 : key.hashCode() * 0x9E3779B9;
+        // Hash map inside segment uses low bits, so segment is selected by high ones
+        return (h >>> 24) & (segments.length - 1);
+    }
+
+    private Segment segmentFor(Object key) {
+        return segments[segmentIndex(key)];
+    }
+
+    /**
+     * Return cached value or null if there is no value or it was expired.
+     */
+    public V get(K key) {
+        Segment s = segmentFor(key);
+        synchronized (s) {
+            CacheEntry<V> e = s.get(key);
+            if (e != null) {
+                if (e.expireAt == 0 || e.expireAt > System.currentTimeMillis()) {
+                    hits.incrementAndGet();
+                    return e.value;
+                }
+                s.remove(key);
+                size.decrementAndGet();
+                evictions.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Put value to cache. Null values are not cached.
+     */
+    public void put(K key, V value) {
+        if (value == null) {
+            invalidate(key);
+            return;
+        }
+        long expireAt = ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : 0;
+        int index = segmentIndex(key);
+        Segment s = segments[index];
+        synchronized (s) {
+            if (s.put(key, new CacheEntry<>(value, expireAt)) == null) {
+                size.incrementAndGet();
+            }
+        }
+        evictOverflow(index);
+    }
+
+    /**
+     * Evict eldest entries while cache exceeds maximum size. Segment that received
+     * new entry is tried first unless that entry is its only one. Segment locks are
+     * taken one by one, so eviction never holds two of them.
+     */
+    private void evictOverflow(int index) {
+        int i = index;
+        while (size.get() > maxSize) {
+            Segment s = segments[i];
+            synchronized (s) {
+                if (s.size() > (i == index ? 1 : 0)) {
+                    Iterator<CacheEntry<V>> it = s.values().iterator();
+                    it.next();
+                    it.remove();
+                    size.decrementAndGet();
+                    evictions.incrementAndGet();
+                    continue;
+                }
+            }
+            i = (i + 1) & (segments.length - 1);
+        }
+    }
+
+    /**
+     * Remove value from cache
+     */
+    public void invalidate(K key) {
+        Segment s = segmentFor(key);
+        synchronized (s) {
+            if (s.remove(key) != null) {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Remove all values from cache
+     */
+    public void invalidateAll() {
+        for (Segment s : segments) {
+            synchronized (s) {
+                size.addAndGet(-s.size());
+                s.clear();
+            }
+        }
+    }
+
+    /**
+     * Remove all expired entries.
+     *
+     * @return Number of removed entries
+     */
+    public int purgeExpired() {
+        if (ttlMillis <= 0) {
+            return 0;
+        }
+        int removed = 0;
+        long now = System.currentTimeMillis();
+        for (Segment s : segments) {
+            synchronized (s) {
+                Iterator<CacheEntry<V>> it = s.values().iterator();
+                while (it.hasNext()) {
+                    if (it.next().expireAt <= now) {
+                        it.remove();
+                        size.decrementAndGet();
+                        removed++;
+                    }
+                }
+            }
+        }
+        evictions.addAndGet(removed);
+        return removed;
+    }
+
+    /**
+     * Return current number of entries (including expired but not evicted yet)
+     */
+    public int size() {
+        return size.get();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    /**
+     * Return number of successful lookups
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Return number of lookups without cached value
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Return number of entries removed because of size limit or expiration
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[size=" + size() + ", hits=" + getHitCount()
+            + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "]";
+    }
+
+    /**
+     * Part of cache entries in access order, guarded by its own monitor
+     */
+    private final class Segment extends LinkedHashMap<K, CacheEntry<V>> {
+
+        private static final long serialVersionUID = 1L;
+
+        Segment(int initialCapacity) {
+            super(initialCapacity, 0.75f, true);
+        }
+    }
+
+    private static final class CacheEntry<V> {
+
+        final V value;
+
+        final long expireAt;
+
+        CacheEntry(V value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
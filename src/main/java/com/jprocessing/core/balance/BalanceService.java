@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.core.balance;
+
+import com.jprocessing.dao.AccountingDao;
+import com.jprocessing.dao.UnitOfWork;
+import com.jprocessing.entities.Accounting;
+import com.jprocessing.entities.Customer;
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import javax.inject.Inject;
+import javax.inject.Named;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Customer balance ledger.
+ * Balance is computed as the latest summary (checkpoint) record plus debit and credit
+ * records after it, and then cached in memory and updated on each debit or credit made
+ * through this service, so balance checks do not touch database at all.
+ * Summary records are written periodically for customers with new records,
+ * so computing balance never scans whole account history.
+ *
+ * Debit, credit and balance loading for one customer are serialized with striped locks,
+ * withdrawals with balance check lock customer row in database instead.
+ * Records written by other application nodes are not visible in cached balances,
+ * use invalidate() if accounting is shared between nodes.
+ *
+ * @see Accounting
+ *
+ * @author rumatoest
+ */
+@Named("jpBalanceService")
+public class BalanceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BalanceService.class);
+
+    private static final int STRIPES = 64;
+
+    /**
+     * Default time lag between now and summary time, records inside this window are not
+     * summarized, so transactions still in progress will not be missed.
+     */
+    public static final long DEFAULT_CHECKPOINT_LAG = TimeUnit.MINUTES.toMillis(5);
+
+    private final AccountingDao accountingDao;
+
+    private final UnitOfWork unitOfWork;
+
+    private final ConcurrentMap<Long, BigDecimal> balances = new ConcurrentHashMap<>();
+
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    private volatile long checkpointLag = DEFAULT_CHECKPOINT_LAG;
+
+    /**
+     * Summary time of previous checkpointAll() run
+     */
+    private volatile Calendar lastCheckpoint;
+
+    @Inject
+    public BalanceService(AccountingDao accountingDao, UnitOfWork unitOfWork) {
+        this.accountingDao = accountingDao;
+        this.unitOfWork = unitOfWork;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public long getCheckpointLag() {
+        return checkpointLag;
+    }
+
+    /**
+     * Set time lag (milliseconds) between now and summary time.
+     * Should be greater than the longest accounting transaction.
+     */
+    public void setCheckpointLag(long checkpointLag) {
+        this.checkpointLag = checkpointLag;
+    }
+
+    private ReentrantLock lockFor(Long customerPk) {
+        int h = customerPk.hashCode();
+        h ^= h >>> 16;
+        return locks[h & (STRIPES - 1)];
+    }
+
+    /**
+     * Return current customer balance.
+     */
+    public BigDecimal getBalance(Long customerPk) {
+        BigDecimal b = balances.get(customerPk);
+        if (b != null) {
+            return b;
+        }
+        ReentrantLock lock = lockFor(customerPk);
+        lock.lock();
+        try {
+            b = balances.get(customerPk);
+            if (b == null) {
+                b = loadBalance(customerPk);
+                balances.put(customerPk, b);
+            }
+            return b;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Check if customer balance is enough to pay provided amount.
+     * Result may be outdated right after return, use creditIfSufficient to withdraw.
+     */
+    public boolean canAfford(Long customerPk, BigDecimal amount) {
+        return getBalance(customerPk).compareTo(amount) >= 0;
+    }
+
+    /**
+     * Add money to customer account.
+     *
+     * @param amount Positive amount
+     * @return Created accounting record
+     */
+    public Accounting debit(Customer customer, BigDecimal amount) {
+        if (amount.signum() <= 0) {
+            throw new IllegalArgumentException("Debit amount must be positive: " + amount);
+        }
+        return write(customer, Accounting.TYPE_DEBIT, amount);
+    }
+
+    /**
+     * Withdraw money from customer account.
+     *
+     * @param amount Positive amount to withdraw
+     * @return Created accounting record
+     */
+    public Accounting credit(Customer customer, BigDecimal amount) {
+        if (amount.signum() <= 0) {
+            throw new IllegalArgumentException("Credit amount must be positive: " + amount);
+        }
+        return write(customer, Accounting.TYPE_CREDIT, amount.negate());
+    }
+
+    /**
+     * Withdraw money from customer account only if balance is enough.
+     * Balance check and write are done in one database transaction holding customer row lock,
+     * so concurrent withdrawals can not overdraw account, also from other application nodes.
+     * Inside outer unit of work balance includes its not committed records and row
+     * stays locked until unit of work ends. Cached balance is dropped and reloaded on next request.
+     *
+     * @param amount Positive amount to withdraw
+     * @return Created accounting record or null if balance is not enough
+     */
+    public Accounting creditIfSufficient(Customer customer, BigDecimal amount) {
+        if (amount.signum() <= 0) {
+            throw new IllegalArgumentException("Credit amount must be positive: " + amount);
+        }
+        final Long pk = customer.getPk();
+        Accounting a = record(customer, Accounting.TYPE_CREDIT, amount.negate());
+        if (accountingDao.persistIfCovered(a) == null) {
+            return null;
+        }
+        if (unitOfWork.isJoined()) {
+            unitOfWork.afterCompletion(new Runnable() {
+
+                @Override
+                public void run() {
+                    balances.remove(pk);
+                }
+            });
+            return a;
+        }
+        // Balance load holds the lock, so it either sees committed record or its result is dropped
+        ReentrantLock lock = lockFor(pk);
+        lock.lock();
+        try {
+            balances.remove(pk);
+        } finally {
+            lock.unlock();
+        }
+        return a;
+    }
+
+    private static Accounting record(Customer customer, int type, BigDecimal amount) {
+        Accounting a = new Accounting();
+        a.setRecordType(type);
+        a.setCustomer(customer);
+        a.setTimestamp(Calendar.getInstance());
+        a.setAmount(amount);
+        return a;
+    }
+
+    private Accounting write(Customer customer, int type, BigDecimal amount) {
+        Accounting a = record(customer, type, amount);
+
+        Long pk = customer.getPk();
+        ReentrantLock lock = lockFor(pk);
+        lock.lock();
+        try {
+            store(pk, a);
+        } finally {
+            lock.unlock();
+        }
+        return a;
+    }
+
+    /**
+     * Persist record and update cached balance, must be called under customer lock.
+     * Inside outer unit of work record is not committed yet, so cached balance is not
+     * changed and is dropped when unit of work ends instead.
+     */
+    private void store(final Long pk, Accounting a) {
+        accountingDao.persist(a);
+        if (unitOfWork.isJoined()) {
+            unitOfWork.afterCompletion(new Runnable() {
+
+                @Override
+                public void run() {
+                    balances.remove(pk);
+                }
+            });
+            return;
+        }
+        BigDecimal b = balances.get(pk);
+        if (b != null) {
+            balances.put(pk, b.add(a.getAmount()));
+        }
+    }
+
+    /**
+     * Remove customer balance from cache, it will be reloaded on next request.
+     */
+    public void invalidate(Long customerPk) {
+        balances.remove(customerPk);
+    }
+
+    /**
+     * Remove all balances from cache.
+     */
+    public void invalidateAll() {
+        balances.clear();
+    }
+
+    /**
+     * Read last summary and records after it in one unit of work
+     */
+    private BigDecimal loadBalance(final Long customerPk) {
+        return unitOfWork.call(new Supplier<BigDecimal>() {
+
+            @Override
+            public BigDecimal get() {
+                Accounting summary = accountingDao.getLastSummary(customerPk);
+                if (summary == null) {
+                    return accountingDao.sumAmount(customerPk, null, null);
+                }
+                return summary.getAmount().add(accountingDao.sumAmount(customerPk, summary.getTimestamp(), null));
+            }
+        });
+    }
+
+    /**
+     * Write summary record for customer.
+     *
+     * @return Created summary or null if customer already has up to date summary
+     */
+    public Accounting checkpoint(Long customerPk) {
+        Calendar until = Calendar.getInstance();
+        until.setTimeInMillis(until.getTimeInMillis() - checkpointLag);
+        return accountingDao.createSummary(customerPk, until);
+    }
+
+    /**
+     * Write summary records for all customers who have debit or credit records
+     * after previous run.
+     *
+     * @return Number of created summary records
+     */
+    public int checkpointAll() {
+        long start = System.currentTimeMillis();
+        Calendar until = Calendar.getInstance();
+        until.setTimeInMillis(start - checkpointLag);
+
+        Calendar after = lastCheckpoint;
+        if (after != null) {
+            // Records committed late still could have timestamps before previous summary time
+            after = (Calendar)after.clone();
+            after.setTimeInMillis(after.getTimeInMillis() - checkpointLag);
+        }
+
+        List<Long> customers = accountingDao.findCustomersWithRecordsAfter(after);
+        int created = 0;
+        for (Long pk : customers) {
+            try {
+                if (accountingDao.createSummary(pk, until) != null) {
+                    created++;
+                }
+            } catch (RuntimeException ex) {
+                logger.error("Can not create balance summary for customer " + pk, ex);
+            }
+        }
+        lastCheckpoint = until;
+        logger.info("Balance checkpoint: {} summaries for {} customers in {} ms",
+            created, customers.size(), System.currentTimeMillis() - start);
+        return created;
+    }
+
+    /**
+     * Schedule periodic checkpointAll() runs.
+     */
+    public ScheduledFuture<?> scheduleCheckpoints(ScheduledExecutorService executor, long period, TimeUnit unit) {
+        return executor.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    checkpointAll();
+                } catch (RuntimeException ex) {
+                    logger.error("Balance checkpoint failed", ex);
+                }
+            }
+        }, period, period, unit);
+    }
+}
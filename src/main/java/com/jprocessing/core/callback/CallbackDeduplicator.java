@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.core.callback;
+
+import com.jprocessing.cache.BloomFilter;
+import com.jprocessing.cache.LruCache;
+import com.jprocessing.entities.Payment;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Detects retried callbacks for transactions that already reached final status.
+ * Bloom filter answers quickly without locking for transactions never seen before,
+ * LRU cache holds final statuses of recently processed transactions.
+ * Callback is duplicate only when cached final status equals callback status,
+ * so such callback can be dropped without touching database.
+ *
+ * @author rumatoest
+ */
+public class CallbackDeduplicator {
+
+    public static final int DEFAULT_SIZE = 100000;
+
+    public static final long DEFAULT_TTL = 60 * 60 * 1000;
+
+    private final BloomFilter filter;
+
+    private final LruCache<String, Payment.STATUS> recent;
+
+    private final AtomicLong checks = new AtomicLong();
+
+    private final AtomicLong duplicates = new AtomicLong();
+
+    public CallbackDeduplicator() {
+        this(DEFAULT_SIZE, DEFAULT_TTL);
+    }
+
+    /**
+     * @param size Number of recent transactions to remember
+     * @param ttlMillis How long transaction final status is remembered
+     */
+    public CallbackDeduplicator(int size, long ttlMillis) {
+        this.filter = new BloomFilter(size, 0.01);
+        this.recent = new LruCache<>(size, ttlMillis);
+    }
+
+    /**
+     * Return true if callback repeats already known final transaction status.
+     */
+    public boolean isDuplicate(PaymentCallback callback) {
+        checks.incrementAndGet();
+        if (!callback.getStatus().isFinal() || !filter.mightContain(callback.getTransactionId())) {
+            return false;
+        }
+        if (recent.get(callback.getTransactionId()) == callback.getStatus()) {
+            duplicates.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Remember transaction status after it was stored to database.
+     * Not final statuses are ignored.
+     */
+    public void record(String transactionId, Payment.STATUS status) {
+        if (status == null || !status.isFinal()) {
+            return;
+        }
+        recent.put(transactionId, status);
+        filter.add(transactionId);
+    }
+
+    /**
+     * Forget transaction, should be called when payment status is changed outside of callbacks.
+     */
+    public void invalidate(String transactionId) {
+        recent.invalidate(transactionId);
+    }
+
+    public long getCheckCount() {
+        return checks.get();
+    }
+
+    public long getDuplicateCount() {
+        return duplicates.get();
+    }
+
+    /**
+     * Return share of checked callbacks that were detected as duplicates
+     */
+    public double getDuplicateRate() {
+        long c = checks.get();
+        return c == 0 ? 0 : (double)duplicates.get() / c;
+    }
+
+    @Override
+    public String toString() {
+        return "CallbackDeduplicator{checks=" + checks.get() + ", duplicates=" + duplicates.get()
+            + ", cached=" + recent.size() + '}';
+    }
+}
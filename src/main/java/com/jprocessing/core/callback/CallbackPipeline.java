@@ -0,0 +1,425 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.core.callback;
+
+import com.jprocessing.core.PaymentProcessor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous payment callback ingestion.
+ * Callbacks are parsed and put to bounded queue, so calling (HTTP) thread is released
+ * right away. Worker threads take callbacks from queue in batches and pass them
+ * to callback handler, so persistence is amortized over many callbacks.
+ * If queue is full for longer than offer timeout, callback is rejected with
+ * RejectedExecutionException and payment system should retry it later.
+ *
+ * Failed batch is retried with exponential backoff, after the last attempt it is
+ * passed to {@link DeadLetterHandler}, so acknowledged callbacks are never dropped silently.
+ *
+ * Workers run in virtual threads when JVM supports them, otherwise in daemon threads.
+ *
+ * @author rumatoest
+ */
+public class CallbackPipeline implements PaymentProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(CallbackPipeline.class);
+
+    private final CallbackParser parser;
+
+    private final CallbackHandler handler;
+
+    private final BlockingQueue<PaymentCallback> queue;
+
+    private final int workers;
+
+    private final int maxBatch;
+
+    private final ThreadFactory threadFactory;
+
+    private final List<Thread> threads = new ArrayList<>();
+
+    private volatile long offerTimeoutMillis = 100;
+
+    private volatile CallbackDeduplicator deduplicator;
+
+    private volatile int maxAttempts = 3;
+
+    private volatile long retryBackoffMillis = 100;
+
+    private volatile DeadLetterHandler deadLetterHandler;
+
+    private volatile boolean running = false;
+
+    /**
+     * Submit holds read lock from running check until callback is queued,
+     * shutdown takes write lock to stop, so no callback is queued after workers may exit.
+     */
+    private final ReadWriteLock admission = new ReentrantReadWriteLock();
+
+    private final AtomicLong accepted = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private final AtomicLong processed = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final AtomicLong batches = new AtomicLong();
+
+    private final AtomicLong skipped = new AtomicLong();
+
+    private final AtomicLong retried = new AtomicLong();
+
+    private final AtomicLong deadLettered = new AtomicLong();
+
+    /**
+     * @param parser Raw callback parser
+     * @param handler Batch handler
+     * @param queueCapacity Maximum number of callbacks waiting for processing
+     * @param workers Number of worker threads
+     * @param maxBatch Maximum number of callbacks passed to handler at once
+     */
+    public CallbackPipeline(CallbackParser parser, CallbackHandler handler,
+        int queueCapacity, int workers, int maxBatch) {
+        this(parser, handler, queueCapacity, workers, maxBatch, defaultThreadFactory());
+    }
+
+    public CallbackPipeline(CallbackParser parser, CallbackHandler handler,
+        int queueCapacity, int workers, int maxBatch, ThreadFactory threadFactory) {
+        if (workers < 1 || maxBatch < 1) {
+            throw new IllegalArgumentException("Workers and batch size must be positive");
+        }
+        this.parser = parser;
+        this.handler = handler;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.workers = workers;
+        this.maxBatch = maxBatch;
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * Return virtual thread factory if JVM supports it, otherwise daemon threads factory.
+     */
+    static ThreadFactory defaultThreadFactory() {
+        try {
+            // Methods are resolved on public interface, builder implementation class is not accessible
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "jp-callback-", 0L);
+            return (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            logger.warn("Virtual threads are not available, callback workers use platform threads: {}", ex.toString());
+            final AtomicInteger counter = new AtomicInteger();
+            return new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "jp-callback-" + counter.getAndIncrement());
+                    t.setDaemon(true);
+                    return t;
+                }
+            };
+        }
+    }
+
+    /**
+     * Return how long callbackListener waits for free space in queue
+     */
+    public long getOfferTimeoutMillis() {
+        return offerTimeoutMillis;
+    }
+
+    /**
+     * Set how long callbackListener waits for free space in queue before rejecting callback.
+     */
+    public void setOfferTimeoutMillis(long offerTimeoutMillis) {
+        this.offerTimeoutMillis = offerTimeoutMillis;
+    }
+
+    /**
+     * Return how many times batch is passed to handler before it is dead lettered
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Attempts must be positive: " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Return delay before the first retry, every next retry waits twice longer
+     */
+    public long getRetryBackoffMillis() {
+        return retryBackoffMillis;
+    }
+
+    public void setRetryBackoffMillis(long retryBackoffMillis) {
+        this.retryBackoffMillis = retryBackoffMillis;
+    }
+
+    public DeadLetterHandler getDeadLetterHandler() {
+        return deadLetterHandler;
+    }
+
+    /**
+     * Set handler for batches failed after all attempts.
+     * Without it failed callbacks are only logged with full content.
+     */
+    public void setDeadLetterHandler(DeadLetterHandler deadLetterHandler) {
+        this.deadLetterHandler = deadLetterHandler;
+    }
+
+    public CallbackDeduplicator getDeduplicator() {
+        return deduplicator;
+    }
+
+    /**
+     * Set deduplicator used to drop retried callbacks before they are queued.
+     * Handler should record processed statuses to the same deduplicator.
+     */
+    public void setDeduplicator(CallbackDeduplicator deduplicator) {
+        this.deduplicator = deduplicator;
+    }
+
+    /**
+     * Start worker threads
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < workers; i++) {
+            Thread t = threadFactory.newThread(new Runnable() {
+
+                @Override
+                public void run() {
+                    work();
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+    }
+
+    /**
+     * Stop accepting callbacks and wait until queued callbacks are processed.
+     * Waits for submits that are already queuing callbacks, later submits are rejected.
+     *
+     * @return true if all workers stopped in time
+     */
+    public synchronized boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        admission.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            admission.writeLock().unlock();
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        boolean stopped = true;
+        for (Thread t : threads) {
+            long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (left > 0) {
+                t.join(left);
+            }
+            stopped &= !t.isAlive();
+        }
+        threads.clear();
+        return stopped;
+    }
+
+    /**
+     * Parse callback and queue it for processing.
+     *
+     * @throws IllegalArgumentException If callback parameters are invalid
+     * @throws RejectedExecutionException If pipeline is stopped or overloaded
+     */
+    @Override
+    public void callbackListener(Map<String, Object> params) {
+        submit(parser.parse(params));
+    }
+
+    /**
+     * Queue typed callback for processing.
+     *
+     * @throws RejectedExecutionException If pipeline is stopped or overloaded
+     */
+    public void submit(PaymentCallback callback) {
+        boolean offered;
+        admission.readLock().lock();
+        try {
+            if (!running) {
+                rejected.incrementAndGet();
+                throw new RejectedExecutionException("Callback pipeline is not running");
+            }
+            CallbackDeduplicator dd = deduplicator;
+            if (dd != null && dd.isDuplicate(callback)) {
+                skipped.incrementAndGet();
+                return;
+            }
+            try {
+                offered = queue.offer(callback, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                offered = false;
+            }
+        } finally {
+            admission.readLock().unlock();
+        }
+        if (!offered) {
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("Callback queue is full, rejected " + callback);
+        }
+        accepted.incrementAndGet();
+    }
+
+    private void work() {
+        List<PaymentCallback> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                PaymentCallback first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                process(batch);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Pass batch to handler retrying with backoff, then to dead letter handler.
+     */
+    private void process(List<PaymentCallback> batch) throws InterruptedException {
+        long backoff = retryBackoffMillis;
+        int attempts = maxAttempts;
+        for (int attempt = 1;; attempt++) {
+            try {
+                handler.handle(batch);
+                processed.addAndGet(batch.size());
+                batches.incrementAndGet();
+                return;
+            } catch (RuntimeException ex) {
+                if (attempt >= attempts) {
+                    deadLetter(batch, ex);
+                    return;
+                }
+                logger.warn("Can not handle {} payment callbacks, attempt {} of {}: {}",
+                    batch.size(), attempt, attempts, ex.toString());
+                retried.incrementAndGet();
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException iex) {
+                    deadLetter(batch, ex);
+                    throw iex;
+                }
+                backoff *= 2;
+            }
+        }
+    }
+
+    private void deadLetter(List<PaymentCallback> batch, RuntimeException cause) {
+        failed.addAndGet(batch.size());
+        DeadLetterHandler dlh = deadLetterHandler;
+        if (dlh != null) {
+            try {
+                dlh.deadLetter(new ArrayList<>(batch), cause);
+                deadLettered.addAndGet(batch.size());
+                return;
+            } catch (RuntimeException ex) {
+                logger.error("Dead letter handler failed", ex);
+            }
+        }
+        logger.error("Can not handle " + batch.size() + " payment callbacks " + batch, cause);
+    }
+
+    /**
+     * Return number of callbacks waiting in queue
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getAcceptedCount() {
+        return accepted.get();
+    }
+
+    /**
+     * Return number of duplicate callbacks dropped without processing
+     */
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getProcessedCount() {
+        return processed.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Return number of batch retries
+     */
+    public long getRetryCount() {
+        return retried.get();
+    }
+
+    /**
+     * Return number of callbacks passed to dead letter handler
+     */
+    public long getDeadLetteredCount() {
+        return deadLettered.get();
+    }
+
+    public long getBatchCount() {
+        return batches.get();
+    }
+}
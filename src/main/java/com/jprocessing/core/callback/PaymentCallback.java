@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.core.callback;
+
+import com.jprocessing.entities.Payment;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Typed payment system callback.
+ * Holds new transaction status reported by payment system and raw callback parameters.
+ *
+ * @author rumatoest
+ */
+public final class PaymentCallback {
+
+    private final String transactionId;
+
+    private final Payment.STATUS status;
+
+    private final long receiveTime;
+
+    private final Map<String, Object> params;
+
+    public PaymentCallback(String transactionId, Payment.STATUS status, Map<String, Object> params) {
+        if (transactionId == null || status == null) {
+            throw new IllegalArgumentException("Transaction id and status are required");
+        }
+        this.transactionId = transactionId;
+        this.status = status;
+        this.receiveTime = System.currentTimeMillis();
+        this.params = params == null ? Collections.<String, Object>emptyMap()
+            : Collections.unmodifiableMap(new HashMap<>(params));
+    }
+
+    /**
+     * Return payment transaction id
+     *
+     * @see Payment#getTransactionId()
+     */
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    /**
+     * Return transaction status reported by payment system
+     */
+    public Payment.STATUS getStatus() {
+        return status;
+    }
+
+    /**
+     * Return time when callback was received
+     */
+    public long getReceiveTime() {
+        return receiveTime;
+    }
+
+    /**
+     * Return raw callback parameters
+     */
+    public Map<String, Object> getParams() {
+        return params;
+    }
+
+    @Override
+    public String toString() {
+        return "PaymentCallback[" + transactionId + ", " + status + "]";
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.core.callback;
+
+import com.jprocessing.core.payment.PaymentStateMachine;
+import com.jprocessing.dao.PaymentDao;
+import com.jprocessing.entities.Payment;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.inject.Inject;
+import javax.persistence.OptimisticLockException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies callback status changes to payments.
+ * Callbacks are grouped by transaction id, all related payments are loaded
+ * with one query and all changed statuses are stored in one transaction
+ * with conditional updates. Whole batch is processed holding state machine locks
+ * of its transactions, and invalid status transitions are skipped.
+ * Payments whose status was changed concurrently, for example by timeout sweep,
+ * are loaded again and their callbacks are applied to stored status.
+ *
+ * @author rumatoest
+ */
+public class PaymentCallbackHandler implements CallbackHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentCallbackHandler.class);
+
+    private final PaymentDao paymentDao;
+
+    private final PaymentStateMachine stateMachine;
+
+    private volatile CallbackDeduplicator deduplicator;
+
+    @Inject
+    public PaymentCallbackHandler(PaymentDao paymentDao, PaymentStateMachine stateMachine) {
+        this.paymentDao = paymentDao;
+        this.stateMachine = stateMachine;
+    }
+
+    public CallbackDeduplicator getDeduplicator() {
+        return deduplicator;
+    }
+
+    /**
+     * Set deduplicator which gets final statuses of handled payments.
+     */
+    public void setDeduplicator(CallbackDeduplicator deduplicator) {
+        this.deduplicator = deduplicator;
+    }
+
+    @Override
+    public void handle(List<PaymentCallback> callbacks) {
+        final Map<String, List<PaymentCallback>> byTransaction = new LinkedHashMap<>();
+        for (PaymentCallback cb : callbacks) {
+            List<PaymentCallback> l = byTransaction.get(cb.getTransactionId());
+            if (l == null) {
+                l = new ArrayList<>(2);
+                byTransaction.put(cb.getTransactionId(), l);
+            }
+            l.add(cb);
+        }
+
+        stateMachine.withLocks(byTransaction.keySet(), new Runnable() {
+
+            @Override
+            public void run() {
+                handleLocked(byTransaction);
+            }
+        });
+    }
+
+    private void handleLocked(Map<String, List<PaymentCallback>> byTransaction) {
+        Map<String, Payment> payments = new HashMap<>();
+        Map<String, Payment.STATUS> stale = new HashMap<>();
+        Map<String, List<PaymentCallback>> pending = byTransaction;
+        while (!pending.isEmpty()) {
+            pending = applyAll(pending, payments, stale);
+        }
+
+        CallbackDeduplicator dd = deduplicator;
+        if (dd != null) {
+            for (Payment p : payments.values()) {
+                dd.record(p.getTransactionId(), p.getStatus());
+            }
+        }
+    }
+
+    /**
+     * Load payments, apply callbacks and store changed statuses.
+     *
+     * @param payments Receives loaded payments by transaction id
+     * @param stale Receives statuses that failed to match stored ones by transaction id
+     * @return Callbacks of payments whose status was changed concurrently, they must be applied again
+     */
+    private Map<String, List<PaymentCallback>> applyAll(Map<String, List<PaymentCallback>> byTransaction,
+        Map<String, Payment> payments, Map<String, Payment.STATUS> stale) {
+        Map<String, Payment> loaded = new HashMap<>();
+        for (Payment p : paymentDao.findByTransactionIds(byTransaction.keySet())) {
+            loaded.put(p.getTransactionId(), p);
+        }
+
+        List<Payment> changed = new ArrayList<>(loaded.size());
+        Map<Long, Payment.STATUS> expected = new HashMap<>();
+        for (Map.Entry<String, List<PaymentCallback>> e : byTransaction.entrySet()) {
+            Payment p = loaded.get(e.getKey());
+            if (p == null) {
+                logger.warn("Callback for unknown transaction {}", e.getKey());
+                payments.remove(e.getKey());
+                continue;
+            }
+            Payment.STATUS current = p.getStatus();
+            if (current == stale.get(e.getKey())) {
+                // Changed status is not visible to this transaction
+                throw new OptimisticLockException("Payment " + e.getKey() + " status was changed concurrently");
+            }
+            payments.put(e.getKey(), p);
+            boolean updated = false;
+            for (PaymentCallback cb : e.getValue()) {
+                updated |= apply(p, cb);
+            }
+            if (updated) {
+                changed.add(p);
+                expected.put(p.getPk(), current);
+            }
+        }
+        if (changed.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Set<Long> notUpdated = paymentDao.updateStatus(changed, expected);
+        Map<String, List<PaymentCallback>> retry = new LinkedHashMap<>();
+        for (Payment p : changed) {
+            if (notUpdated.contains(p.getPk())) {
+                retry.put(p.getTransactionId(), byTransaction.get(p.getTransactionId()));
+                stale.put(p.getTransactionId(), expected.get(p.getPk()));
+            }
+        }
+        return retry;
+    }
+
+    /**
+     * Apply callback to payment.
+     *
+     * @return true if payment was changed
+     */
+    protected boolean apply(Payment payment, PaymentCallback callback) {
+        try {
+            return stateMachine.apply(payment, callback.getStatus(), callback.getReceiveTime());
+        } catch (IllegalStateException ex) {
+            logger.warn("Callback ignored: {}", ex.getMessage());
+            return false;
+        }
+    }
+}
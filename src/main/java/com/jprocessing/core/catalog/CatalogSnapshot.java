@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.core.catalog;
+
+import com.jprocessing.entities.Product;
+import com.jprocessing.entities.ProductPrice;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable in-memory index of products and their prices.
+ * Products are indexed by primary key (sorted array with binary search)
+ * and by SKU (hash map), so lookups do not allocate any objects.
+ *
+ * Entities in snapshot are detached and shared between threads,
+ * they must be treated as read only.
+ *
+ * @author rumatoest
+ */
+public final class CatalogSnapshot {
+
+    private static final List<ProductPrice> NO_PRICES = Collections.emptyList();
+
+    /**
+     * Orders prices by priority (higher first) and then by minimal quantity (higher first)
+     */
+    static final Comparator<ProductPrice> PRICE_ORDER = new Comparator<ProductPrice>() {
+
+        @Override
+        public int compare(ProductPrice a, ProductPrice b) {
+            int c = Integer.compare(b.getPriority(), a.getPriority());
+            return c != 0 ? c : Double.compare(b.getMinQuantity(), a.getMinQuantity());
+        }
+    };
+
+    private final long[] pks;
+
+    private final Product[] products;
+
+    private final List<ProductPrice>[] prices;
+
+    private final Map<String, Product> bySku;
+
+    private final long createTime;
+
+    CatalogSnapshot(Collection<Product> products, Collection<ProductPrice> prices) {
+        Product[] sorted = products.toArray(new Product[products.size()]);
+        Arrays.sort(sorted, new Comparator<Product>() {
+
+            @Override
+            public int compare(Product a, Product b) {
+                return Long.compare(a.getPk(), b.getPk());
+            }
+        });
+
+        this.products = sorted;
+        this.pks = new long[sorted.length];
+        this.bySku = new HashMap<>(sorted.length * 2);
+        for (int i = 0; i < sorted.length; i++) {
+            pks[i] = sorted[i].getPk();
+            bySku.put(sorted[i].getSku(), sorted[i]);
+        }
+
+        Map<Long, List<ProductPrice>> grouped = new HashMap<>();
+        for (ProductPrice pp : prices) {
+            Long pk = pp.getProduct().getPk();
+            List<ProductPrice> l = grouped.get(pk);
+            if (l == null) {
+                l = new ArrayList<>();
+                grouped.put(pk, l);
+            }
+            l.add(pp);
+        }
+
+        this.prices = newPriceLists(sorted.length);
+        for (int i = 0; i < sorted.length; i++) {
+            List<ProductPrice> l = grouped.get(pks[i]);
+            if (l == null) {
+                this.prices[i] = NO_PRICES;
+            } else {
+                Collections.sort(l, PRICE_ORDER);
+                this.prices[i] = Collections.unmodifiableList(l);
+            }
+        }
+
+        this.createTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Return time when snapshot was created
+     */
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    /**
+     * Return number of products in snapshot
+     */
+    public int size() {
+        return products.length;
+    }
+
+    /**
+     * Return index of product in snapshot or negative value if not found.
+     * Index is valid only for this snapshot.
+     */
+    public int indexOf(long productPk) {
+        return Arrays.binarySearch(pks, productPk);
+    }
+
+    /**
+     * Return product at snapshot index
+     */
+    public Product getAt(int index) {
+        return products[index];
+    }
+
+    /**
+     * Return prices of product at snapshot index
+     */
+    public List<ProductPrice> getPricesAt(int index) {
+        return prices[index];
+    }
+
+    /**
+     * Return product by primary key or null if not found.
+     */
+    public Product getByPk(long productPk) {
+        int i = indexOf(productPk);
+        return i < 0 ? null : products[i];
+    }
+
+    /**
+     * Return product by SKU or null if not found.
+     */
+    public Product getBySku(String sku) {
+        return bySku.get(sku);
+    }
+
+    /**
+     * Return all prices related to product ordered by priority and
+     * minimal quantity (higher first). Empty if product not found.
+     */
+    public List<ProductPrice> getPrices(long productPk) {
+        int i = indexOf(productPk);
+        return i < 0 ? NO_PRICES : prices[i];
+    }
+
+    /**
+     * Return unmodifiable list of all products ordered by primary key.
+     */
+    public List<Product> getProducts() {
+        return Collections.unmodifiableList(Arrays.asList(products));
+    }
+
+    /**
+     * Generic array can not be created directly, array never leaks outside of snapshot
+     * and holds only price lists, so raw array creation is safe.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static List<ProductPrice>[] newPriceLists(int size) {
+        return new List[size];
+    }
+}
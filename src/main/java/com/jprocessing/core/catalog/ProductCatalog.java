@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.core.catalog;
+
+import com.jprocessing.dao.ProductDao;
+import com.jprocessing.dao.ProductPriceDao;
+import com.jprocessing.entities.Product;
+import com.jprocessing.entities.ProductPrice;
+import java.util.List;
+import javax.inject.Inject;
+import javax.inject.Named;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Product catalog backed by immutable in-memory snapshot.
+ * Snapshot contains all not deleted products with their prices and is loaded
+ * on first access. Call reload() after products or prices were changed,
+ * new snapshot is built aside and replaced atomically (copy on write),
+ * so readers never wait and never see partially updated catalog.
+ *
+ * @see CatalogSnapshot
+ *
+ * @author rumatoest
+ */
+@Named("jpProductCatalog")
+public class ProductCatalog {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductCatalog.class);
+
+    private final ProductDao productDao;
+
+    private final ProductPriceDao priceDao;
+
+    private volatile CatalogSnapshot snapshot;
+
+    @Inject
+    public ProductCatalog(ProductDao productDao, ProductPriceDao priceDao) {
+        this.productDao = productDao;
+        this.priceDao = priceDao;
+    }
+
+    /**
+     * Return current catalog snapshot, load it if catalog was not loaded yet.
+     */
+    public CatalogSnapshot getSnapshot() {
+        CatalogSnapshot s = this.snapshot;
+        if (s == null) {
+            synchronized (this) {
+                s = this.snapshot;
+                if (s == null) {
+                    s = reload();
+                }
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Load new snapshot from database and replace current one.
+     *
+     * @return New snapshot
+     */
+    public synchronized CatalogSnapshot reload() {
+        long start = System.currentTimeMillis();
+        List<Product> products = productDao.findNotDeleted();
+        List<ProductPrice> prices = priceDao.findForNotDeletedProducts();
+        CatalogSnapshot s = new CatalogSnapshot(products, prices);
+        this.snapshot = s;
+        logger.info("Product catalog loaded: {} products, {} prices in {} ms",
+            products.size(), prices.size(), System.currentTimeMillis() - start);
+        return s;
+    }
+
+    /**
+     * Return product by primary key or null if not found.
+     */
+    public Product getByPk(long productPk) {
+        return getSnapshot().getByPk(productPk);
+    }
+
+    /**
+     * Return product by SKU or null if not found.
+     */
+    public Product getBySku(String sku) {
+        return getSnapshot().getBySku(sku);
+    }
+
+    /**
+     * Return product prices ordered by priority.
+     *
+     * @see CatalogSnapshot#getPrices(long)
+     */
+    public List<ProductPrice> getPrices(long productPk) {
+        return getSnapshot().getPrices(productPk);
+    }
+}
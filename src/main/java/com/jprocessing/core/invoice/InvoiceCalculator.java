@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.core.invoice;
+
+import com.jprocessing.entities.Invoice;
+import com.jprocessing.entities.InvoiceItem;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Currency;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.inject.Named;
+
+/**
+ * Invoice totals calculation.
+ * Prices and quantities are converted to long values with 4 decimal digits (database scale),
+ * line totals are multiplied and rounded to currency minor units with integer arithmetic,
+ * so no intermediate BigDecimal values are created. Values not fitting into long
+ * are calculated with BigDecimal.
+ *
+ * Currency scale is ISO 4217 default fraction digits unless configured,
+ * rounding is half up unless configured. Each line is rounded separately
+ * and invoice total is sum of rounded lines.
+ *
+ * @author rumatoest
+ */
+@Named("jpInvoiceCalculator")
+public class InvoiceCalculator {
+
+    /**
+     * Scale of price and quantity values
+     */
+    static final int VALUE_SCALE = 4;
+
+    private static final long[] POW10 = new long[19];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    private final ConcurrentMap<String, CurrencyRule> rules = new ConcurrentHashMap<>();
+
+    private volatile RoundingMode defaultRounding = RoundingMode.HALF_UP;
+
+    /**
+     * Set number of fraction digits for currency
+     */
+    public void setScale(String currency, int scale) {
+        if (scale < 0 || scale > 2 * VALUE_SCALE) {
+            throw new IllegalArgumentException("Unsupported currency scale " + scale);
+        }
+        CurrencyRule r = rule(currency);
+        rules.put(currency, new CurrencyRule(scale, r.rounding));
+    }
+
+    /**
+     * Set rounding mode for currency
+     */
+    public void setRounding(String currency, RoundingMode rounding) {
+        CurrencyRule r = rule(currency);
+        rules.put(currency, new CurrencyRule(r.scale, rounding));
+    }
+
+    /**
+     * Set rounding mode for currencies without own rounding mode.
+     * Already used currencies keep previous mode.
+     */
+    public void setDefaultRounding(RoundingMode defaultRounding) {
+        this.defaultRounding = defaultRounding;
+    }
+
+    /**
+     * Return number of fraction digits for currency
+     */
+    public int getScale(String currency) {
+        return rule(currency).scale;
+    }
+
+    private CurrencyRule rule(String currency) {
+        CurrencyRule r = rules.get(currency);
+        if (r == null) {
+            int scale = 2;
+            try {
+                int digits = Currency.getInstance(currency).getDefaultFractionDigits();
+                if (digits >= 0) {
+                    scale = digits;
+                }
+            } catch (IllegalArgumentException | NullPointerException ex) {
+                // unknown currency code, use cents
+            }
+            r = new CurrencyRule(scale, defaultRounding);
+            CurrencyRule prev = rules.putIfAbsent(currency, r);
+            if (prev != null) {
+                r = prev;
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Convert unit price stored as double (catalog price value) to decimal price
+     * with database price scale, rounded with currency rounding mode.
+     * Shortest decimal representation of double is rounded, so price entered as
+     * 19.99 stays 19.99 and binary noise like 19.990000000000002 is dropped.
+     */
+    public BigDecimal unitPrice(double value, String currency) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Unit price is not a number: " + value);
+        }
+        return BigDecimal.valueOf(value).setScale(VALUE_SCALE, rule(currency).rounding);
+    }
+
+    /**
+     * Return line total (price * quantity) in currency minor units
+     *
+     * @throws ArithmeticException If result does not fit into long
+     */
+    public long lineTotalMinor(BigDecimal price, BigDecimal quantity, String currency) {
+        return lineTotalMinor(price, quantity, rule(currency));
+    }
+
+    private static long lineTotalMinor(BigDecimal price, BigDecimal quantity, CurrencyRule r) {
+        long p = toFixed(price);
+        long q = toFixed(quantity);
+        if (p != Long.MIN_VALUE && q != Long.MIN_VALUE) {
+            long hi = Math.abs(p) | Math.abs(q);
+            // both values below 2^31 can not overflow
+            if ((hi >>> 31) == 0 || fitsMultiply(p, q)) {
+                return divide(p * q, r.divisor, r.rounding);
+            }
+        }
+        return price.multiply(quantity).setScale(r.scale, r.rounding).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Return line total (price * quantity) rounded to currency scale
+     */
+    public BigDecimal lineTotal(BigDecimal price, BigDecimal quantity, String currency) {
+        return BigDecimal.valueOf(lineTotalMinor(price, quantity, currency), rule(currency).scale);
+    }
+
+    /**
+     * Return invoice item total rounded to its currency scale
+     */
+    public BigDecimal lineTotal(InvoiceItem item) {
+        return lineTotal(item.getProductPrice(), item.getQuantity(), item.getCurrency());
+    }
+
+    /**
+     * Calculate invoice subtotals by currency in one pass over items
+     */
+    public InvoiceTotals calculate(Invoice invoice) {
+        Collection<InvoiceItem> items = invoice.getItems();
+        if (items == null || items.isEmpty()) {
+            return InvoiceTotals.EMPTY;
+        }
+        String[] currencies = new String[2];
+        int[] scales = new int[2];
+        long[] sums = new long[2];
+        int count = 0;
+        String lastCurrency = null;
+        CurrencyRule lastRule = null;
+        int last = -1;
+        for (InvoiceItem it : items) {
+            String c = it.getCurrency();
+            if (!c.equals(lastCurrency)) {
+                last = -1;
+                for (int i = 0; i < count; i++) {
+                    if (currencies[i].equals(c)) {
+                        last = i;
+                        break;
+                    }
+                }
+                if (last < 0) {
+                    if (count == currencies.length) {
+                        currencies = Arrays.copyOf(currencies, count * 2);
+                        scales = Arrays.copyOf(scales, count * 2);
+                        sums = Arrays.copyOf(sums, count * 2);
+                    }
+                    currencies[count] = c;
+                    scales[count] = rule(c).scale;
+                    last = count++;
+                }
+                lastCurrency = c;
+                lastRule = rule(c);
+            }
+            sums[last] = Math.addExact(sums[last], lineTotalMinor(it.getProductPrice(), it.getQuantity(), lastRule));
+        }
+        return new InvoiceTotals(currencies, scales, sums, count);
+    }
+
+    /**
+     * Calculate invoice totals and store total to invoice.
+     *
+     * @throws IllegalStateException If invoice items have different currencies
+     */
+    public InvoiceTotals apply(Invoice invoice) {
+        InvoiceTotals t = calculate(invoice);
+        invoice.setTotal(t.getTotal());
+        return t;
+    }
+
+    /**
+     * Recalculate totals of many invoices in parallel.
+     * Invoices must not be shared with other threads during calculation.
+     *
+     * @throws IllegalStateException If any invoice has items with different currencies
+     */
+    public void applyAll(Collection<Invoice> invoices) {
+        invoices.parallelStream().forEach(this::apply);
+    }
+
+    /**
+     * Convert value to long with VALUE_SCALE digits.
+     *
+     * @return Long.MIN_VALUE if value can not be represented exactly
+     */
+    static long toFixed(BigDecimal value) {
+        int scale = value.scale();
+        if (scale > VALUE_SCALE || scale < VALUE_SCALE - 18) {
+            return Long.MIN_VALUE;
+        }
+        long unscaled;
+        int precision = value.precision();
+        if (precision <= 15 && scale >= 0) {
+            // value with at most 15 digits is exactly restored from its double value,
+            // unlike unscaledValue() it does not create BigInteger
+            unscaled = Math.round(value.doubleValue() * POW10[scale]);
+        } else if (precision <= 18) {
+            unscaled = value.unscaledValue().longValue();
+        } else {
+            return Long.MIN_VALUE;
+        }
+        long factor = POW10[VALUE_SCALE - scale];
+        long hi = Math.abs(unscaled) | factor;
+        if ((hi >>> 31) != 0 && !fitsMultiply(unscaled, factor)) {
+            return Long.MIN_VALUE;
+        }
+        return unscaled * factor;
+    }
+
+    private static boolean fitsMultiply(long a, long b) {
+        long r = a * b;
+        return a == 0 || (r / a == b && !(a == -1 && b == Long.MIN_VALUE));
+    }
+
+    /**
+     * Divide with rounding
+     */
+    static long divide(long value, long divisor, RoundingMode rounding) {
+        long q = value / divisor;
+        long r = value - q * divisor;
+        if (r == 0) {
+            return q;
+        }
+        int sign = value < 0 ? -1 : 1;
+        boolean increment;
+        switch (rounding) {
+            case UP:
+                increment = true;
+                break;
+            case DOWN:
+                increment = false;
+                break;
+            case CEILING:
+                increment = sign > 0;
+                break;
+            case FLOOR:
+                increment = sign < 0;
+                break;
+            case HALF_UP:
+            case HALF_DOWN:
+            case HALF_EVEN:
+                int cmp = Long.compare(Math.abs(r) * 2, divisor);
+                if (cmp != 0) {
+                    increment = cmp > 0;
+                } else if (rounding == RoundingMode.HALF_EVEN) {
+                    increment = (q & 1) != 0;
+                } else {
+                    increment = rounding == RoundingMode.HALF_UP;
+                }
+                break;
+            default:
+                throw new ArithmeticException("Rounding necessary");
+        }
+        return increment ? q + sign : q;
+    }
+
+    private static final class CurrencyRule {
+
+        private final int scale;
+
+        private final RoundingMode rounding;
+
+        /**
+         * Divisor from VALUE_SCALE * 2 digits to currency scale
+         */
+        private final long divisor;
+
+        CurrencyRule(int scale, RoundingMode rounding) {
+            this.scale = scale;
+            this.rounding = rounding;
+            this.divisor = POW10[2 * VALUE_SCALE - scale];
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.core.invoice;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Invoice totals calculated by {@link InvoiceCalculator}.
+ * Holds subtotal for each currency of invoice items in currency minor units.
+ *
+ * @author rumatoest
+ */
+public final class InvoiceTotals {
+
+    static final InvoiceTotals EMPTY = new InvoiceTotals(new String[0], new int[0], new long[0], 0);
+
+    private final String[] currencies;
+
+    private final int[] scales;
+
+    private final long[] subtotals;
+
+    private final int count;
+
+    InvoiceTotals(String[] currencies, int[] scales, long[] subtotals, int count) {
+        this.currencies = currencies;
+        this.scales = scales;
+        this.subtotals = subtotals;
+        this.count = count;
+    }
+
+    /**
+     * Return true if all items have the same currency (or there are no items)
+     */
+    public boolean isSingleCurrency() {
+        return count <= 1;
+    }
+
+    /**
+     * Return invoice currency or null if there are no items
+     *
+     * @throws IllegalStateException If invoice items have different currencies
+     */
+    public String getCurrency() {
+        if (count > 1) {
+            throw new IllegalStateException("Invoice has items in " + count + " currencies");
+        }
+        return count == 0 ? null : currencies[0];
+    }
+
+    /**
+     * Return invoice total
+     *
+     * @throws IllegalStateException If invoice items have different currencies
+     */
+    public BigDecimal getTotal() {
+        if (count > 1) {
+            throw new IllegalStateException("Invoice has items in " + count + " currencies");
+        }
+        return count == 0 ? BigDecimal.ZERO : BigDecimal.valueOf(subtotals[0], scales[0]);
+    }
+
+    /**
+     * Return sum of items in provided currency, zero if there are no such items
+     */
+    public BigDecimal getSubtotal(String currency) {
+        for (int i = 0; i < count; i++) {
+            if (currencies[i].equals(currency)) {
+                return BigDecimal.valueOf(subtotals[i], scales[i]);
+            }
+        }
+        return BigDecimal.ZERO;
+    }
+
+    /**
+     * Return sum of items in provided currency in minor units
+     */
+    public long getSubtotalMinor(String currency) {
+        for (int i = 0; i < count; i++) {
+            if (currencies[i].equals(currency)) {
+                return subtotals[i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Return subtotals by currency in items order
+     */
+    public Map<String, BigDecimal> getSubtotals() {
+        Map<String, BigDecimal> m = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            m.put(currencies[i], BigDecimal.valueOf(subtotals[i], scales[i]));
+        }
+        return Collections.unmodifiableMap(m);
+    }
+
+    @Override
+    public String toString() {
+        return "InvoiceTotals" + getSubtotals();
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.core.liability;
+
+import com.jprocessing.dao.LiabilityDao;
+import com.jprocessing.entities.Liability;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.inject.Inject;
+import javax.inject.Named;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fires liability expiry events.
+ * Liabilities expiring in the next time window are loaded by expire_time index
+ * and scheduled in {@link TimingWheel}, next window is loaded when half of current
+ * window has passed. So only upcoming liabilities are kept in memory and table
+ * is never scanned as a whole.
+ *
+ * Liabilities created with expire time inside already loaded window are not seen
+ * by the loader, they should be passed to {@link #schedule(Liability)}.
+ *
+ * @author rumatoest
+ */
+@Named("jpLiabilityExpiryService")
+public class LiabilityExpiryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiabilityExpiryService.class);
+
+    public static final long DEFAULT_TICK = TimeUnit.SECONDS.toMillis(1);
+
+    public static final long DEFAULT_WINDOW = TimeUnit.HOURS.toMillis(1);
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private final LiabilityDao liabilityDao;
+
+    private final List<LiabilityExpiryListener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile long windowMillis = DEFAULT_WINDOW;
+
+    private volatile int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    private volatile String fetchGraph;
+
+    private TimingWheel<Liability> wheel;
+
+    /**
+     * End of loaded window
+     */
+    private volatile long loadedUntil;
+
+    private final AtomicLong loaded = new AtomicLong();
+
+    private final AtomicLong fired = new AtomicLong();
+
+    private volatile long lastLoadMillis;
+
+    @Inject
+    public LiabilityExpiryService(LiabilityDao liabilityDao) {
+        this.liabilityDao = liabilityDao;
+    }
+
+    public void addListener(LiabilityExpiryListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(LiabilityExpiryListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Return size of time window loaded from database at once
+     */
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public void setWindowMillis(long windowMillis) {
+        if (windowMillis < 1) {
+            throw new IllegalArgumentException("Window must be positive: " + windowMillis);
+        }
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Return number of liabilities loaded from database in one query
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Return name of entity graph used to load liabilities, null by default
+     */
+    public String getFetchGraph() {
+        return fetchGraph;
+    }
+
+    /**
+     * Listeners receive detached liabilities, so associations they need
+     * (e.g. {@link Liability#GRAPH_PRODUCT}) must be fetched with liability itself.
+     */
+    public void setFetchGraph(String fetchGraph) {
+        this.fetchGraph = fetchGraph;
+    }
+
+    /**
+     * Reset service state and load liabilities expiring after provided time.
+     *
+     * @param fromMillis Liabilities expired before this time are ignored
+     * @param tickMillis Expiry events resolution
+     */
+    public void init(long fromMillis, long tickMillis) {
+        List<Liability> overdue = new ArrayList<>();
+        synchronized (this) {
+            wheel = new TimingWheel<>(tickMillis, fromMillis);
+            loadedUntil = fromMillis;
+            load(fromMillis, overdue);
+        }
+        for (Liability l : overdue) {
+            fire(l);
+        }
+    }
+
+    /**
+     * Start firing expiry events with provided executor, liabilities expiring from now are loaded.
+     */
+    public ScheduledFuture<?> start(ScheduledExecutorService executor, long tickMillis) {
+        init(System.currentTimeMillis(), tickMillis);
+        return executor.scheduleAtFixedRate(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    tick(System.currentTimeMillis());
+                } catch (RuntimeException ex) {
+                    logger.error("Liability expiry tick failed", ex);
+                }
+            }
+        }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Fire events for liabilities expired till provided time and load next window if needed.
+     *
+     * @return Number of fired events
+     */
+    public int tick(long nowMillis) {
+        List<Liability> expired = new ArrayList<>();
+        synchronized (this) {
+            if (wheel == null) {
+                throw new IllegalStateException("Expiry service is not initialized");
+            }
+            load(nowMillis, expired);
+            expired.addAll(wheel.advance(nowMillis));
+        }
+        for (Liability l : expired) {
+            fire(l);
+        }
+        return expired.size();
+    }
+
+    /**
+     * Schedule liability that was created or changed after its expiry window was loaded.
+     * Liability already expired fires immediately.
+     */
+    public void schedule(Liability liability) {
+        if (liability.getExpireTime() == null) {
+            return;
+        }
+        boolean scheduled;
+        synchronized (this) {
+            if (wheel == null || liability.getExpireTime().getTimeInMillis() > loadedUntil) {
+                // will be loaded with its window
+                return;
+            }
+            scheduled = wheel.schedule(liability, liability.getExpireTime().getTimeInMillis());
+        }
+        if (!scheduled) {
+            fire(liability);
+        }
+    }
+
+    /**
+     * Load next window when less than half of current window is left.
+     *
+     * @param overdue Receives loaded liabilities that are already expired
+     */
+    private void load(long nowMillis, List<Liability> overdue) {
+        long window = windowMillis;
+        if (loadedUntil - nowMillis > window / 2) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        Calendar after = Calendar.getInstance();
+        after.setTimeInMillis(loadedUntil);
+        Calendar until = Calendar.getInstance();
+        until.setTimeInMillis(Math.max(loadedUntil, nowMillis) + window);
+
+        int count = 0;
+        Liability last = null;
+        List<Liability> chunk;
+        do {
+            chunk = liabilityDao.findExpiring(after, until, last, chunkSize, fetchGraph);
+            for (Liability l : chunk) {
+                last = l;
+                if (!wheel.schedule(l, l.getExpireTime().getTimeInMillis())) {
+                    overdue.add(l);
+                }
+                count++;
+            }
+        } while (chunk.size() == chunkSize);
+
+        loadedUntil = until.getTimeInMillis();
+        lastLoadMillis = System.currentTimeMillis() - started;
+        loaded.addAndGet(count);
+        logger.debug("Loaded {} liabilities expiring till {} in {} ms", count, until.getTime(), lastLoadMillis);
+    }
+
+    private void fire(Liability liability) {
+        fired.incrementAndGet();
+        for (LiabilityExpiryListener listener : listeners) {
+            try {
+                listener.expired(liability);
+            } catch (RuntimeException ex) {
+                logger.error("Liability " + liability.getPk() + " expiry listener failed", ex);
+            }
+        }
+    }
+
+    /**
+     * Return number of liabilities waiting for expiry in memory
+     */
+    public synchronized int getScheduledCount() {
+        return wheel == null ? 0 : wheel.size();
+    }
+
+    public long getLoadedCount() {
+        return loaded.get();
+    }
+
+    public long getFiredCount() {
+        return fired.get();
+    }
+
+    /**
+     * Return duration of last window load in milliseconds
+     */
+    public long getLastLoadMillis() {
+        return lastLoadMillis;
+    }
+}
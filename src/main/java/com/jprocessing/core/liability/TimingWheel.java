@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.core.liability;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel.
+ * Each level has 64 slots, level 0 slot covers one tick, every next level slot covers
+ * whole revolution of the previous level. Scheduling is O(1): item goes to the slot
+ * of the lowest level that can hold its deadline. When lower level completes revolution
+ * items from the next slot of upper level are moved down. Levels are added on demand.
+ *
+ * Wheel is driven by {@link #advance(long)} calls, it has no own thread.
+ * All methods are thread safe.
+ *
+ * @param <T> Scheduled item type
+ *
+ * @author rumatoest
+ */
+public class TimingWheel<T> {
+
+    private static final int BITS = 6;
+
+    private static final int SLOTS = 1 << BITS;
+
+    private static final int MASK = SLOTS - 1;
+
+    private final long tickMillis;
+
+    private final List<List<Timer<T>>[]> levels = new ArrayList<>();
+
+    /**
+     * Last processed tick
+     */
+    private long currentTick;
+
+    private int size;
+
+    /**
+     * @param tickMillis Wheel resolution, items fire not earlier than deadline and at most one tick later
+     * @param startMillis Wheel start time
+     */
+    public TimingWheel(long tickMillis, long startMillis) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("Tick must be positive: " + tickMillis);
+        }
+        this.tickMillis = tickMillis;
+        this.currentTick = startMillis / tickMillis;
+        addLevel();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void addLevel() {
+        // Generic array can not be created, slots only ever hold timers of this wheel
+        List<Timer<T>>[] slots = new List[SLOTS];
+        levels.add(slots);
+    }
+
+    /**
+     * Schedule item.
+     *
+     * @param item Item to schedule
+     * @param deadlineMillis Time when item expires
+     * @return false if deadline already passed and item was not scheduled
+     */
+    public synchronized boolean schedule(T item, long deadlineMillis) {
+        // round up, so item never fires before deadline
+        long tick = (deadlineMillis + tickMillis - 1) / tickMillis;
+        if (tick <= currentTick) {
+            return false;
+        }
+        place(new Timer<>(item, tick));
+        size++;
+        return true;
+    }
+
+    private void place(Timer<T> timer) {
+        long delta = timer.tick - currentTick;
+        int level = 0;
+        while (level < 10 && delta >= (1L << (BITS * (level + 1)))) {
+            level++;
+        }
+        while (levels.size() <= level) {
+            addLevel();
+        }
+        int slot = (int)((timer.tick >>> (BITS * level)) & MASK);
+        List<Timer<T>>[] slots = levels.get(level);
+        if (slots[slot] == null) {
+            slots[slot] = new ArrayList<>(4);
+        }
+        slots[slot].add(timer);
+    }
+
+    /**
+     * Move wheel to provided time.
+     *
+     * @return Items with deadline not after provided time, in deadline order (with tick resolution)
+     */
+    public synchronized List<T> advance(long nowMillis) {
+        long target = nowMillis / tickMillis;
+        List<T> expired = new ArrayList<>();
+        while (currentTick < target && size > 0) {
+            currentTick++;
+            cascade();
+            List<Timer<T>>[] slots = levels.get(0);
+            int slot = (int)(currentTick & MASK);
+            List<Timer<T>> bucket = slots[slot];
+            if (bucket != null) {
+                slots[slot] = null;
+                for (Timer<T> t : bucket) {
+                    expired.add(t.item);
+                }
+                size -= bucket.size();
+            }
+        }
+        if (currentTick < target) {
+            // nothing scheduled, jump straight to target
+            currentTick = target;
+        }
+        return expired;
+    }
+
+    /**
+     * Move items down from upper levels whose slot starts at current tick
+     */
+    private void cascade() {
+        for (int level = 1; level < levels.size(); level++) {
+            if (((currentTick >>> (BITS * (level - 1))) & MASK) != 0) {
+                return;
+            }
+            List<Timer<T>>[] slots = levels.get(level);
+            int slot = (int)((currentTick >>> (BITS * level)) & MASK);
+            List<Timer<T>> bucket = slots[slot];
+            if (bucket != null) {
+                slots[slot] = null;
+                for (Timer<T> t : bucket) {
+                    place(t);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return number of scheduled items
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Remove all scheduled items
+     */
+    public synchronized void clear() {
+        levels.clear();
+        addLevel();
+        size = 0;
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    private static final class Timer<T> {
+
+        private final T item;
+
+        private final long tick;
+
+        Timer(T item, long tick) {
+            this.item = item;
+            this.tick = tick;
+        }
+    }
+}
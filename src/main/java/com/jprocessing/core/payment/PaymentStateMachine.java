@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.core.payment;
+
+import com.jprocessing.dao.PaymentDao;
+import com.jprocessing.dao.UnitOfWork;
+import com.jprocessing.entities.Payment;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.persistence.OptimisticLockException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Payment status state machine.
+ * Validates status transitions with {@link Payment.STATUS#canTransitTo(Payment.STATUS)}
+ * and serializes updates of one transaction with striped locks keyed by transaction id,
+ * so unrelated payments change status in parallel.
+ *
+ * Locks are local to this service instance. Status is stored with conditional update
+ * matching status payment was loaded with, so changes made by bulk timeout sweep
+ * or by other application nodes are never overwritten.
+ *
+ * @author rumatoest
+ */
+@Named("jpPaymentStateMachine")
+public class PaymentStateMachine {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentStateMachine.class);
+
+    private static final int STRIPES = 256;
+
+    private final PaymentDao paymentDao;
+
+    private final UnitOfWork unitOfWork;
+
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    @Inject
+    public PaymentStateMachine(PaymentDao paymentDao, UnitOfWork unitOfWork) {
+        this.paymentDao = paymentDao;
+        this.unitOfWork = unitOfWork;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    private static int stripe(String transactionId) {
+        int h = transactionId.hashCode();
+        h ^= (h >>> 16);
+        return h & (STRIPES - 1);
+    }
+
+    /**
+     * Change payment status in memory if transition is allowed.
+     * Sets payment end time when payment leaves pending status.
+     *
+     * @param time Transition timestamp in milliseconds
+     * @return true if status was changed, false if payment already has this status
+     * @throws IllegalStateException If transition is not allowed
+     */
+    public boolean apply(Payment payment, Payment.STATUS status, long time) {
+        Payment.STATUS current = payment.getStatus();
+        if (current == status) {
+            return false;
+        }
+        if (current != null && !current.canTransitTo(status)) {
+            throw new IllegalStateException("Payment " + payment.getTransactionId()
+                + " can not change status from " + current + " to " + status);
+        }
+        payment.setStatus(status);
+        if (status != Payment.STATUS.PENDING) {
+            Calendar end = Calendar.getInstance();
+            end.setTimeInMillis(time);
+            payment.setEndTime(end);
+        }
+        return true;
+    }
+
+    /**
+     * Load payment, change its status and store it while holding transaction lock.
+     * Payment is loaded and stored in one unit of work, lock is released when method returns.
+     * Status is stored only if it was not changed since payment was loaded, otherwise payment
+     * is loaded again and transition is checked against its stored status. If caller already
+     * runs unit of work, updated row stays locked by database until it ends.
+     *
+     * @return Updated payment or null if there is no payment with this transaction id
+     * @throws IllegalStateException If transition is not allowed
+     * @throws OptimisticLockException If status was changed concurrently, but current transaction
+     * can not read changed status
+     */
+    public Payment transit(final String transactionId, final Payment.STATUS status) {
+        ReentrantLock lock = locks[stripe(transactionId)];
+        lock.lock();
+        try {
+            return unitOfWork.call(new Supplier<Payment>() {
+
+                @Override
+                public Payment get() {
+                    long time = System.currentTimeMillis();
+                    Payment p = paymentDao.getByTransactionId(transactionId);
+                    Payment.STATUS stale = null;
+                    while (p != null) {
+                        Payment.STATUS current = p.getStatus();
+                        if (current == stale) {
+                            throw new OptimisticLockException("Payment " + transactionId
+                                + " status was changed concurrently");
+                        }
+                        if (!apply(p, status, time)) {
+                            return p;
+                        }
+                        if (paymentDao.updateStatus(Collections.singletonList(p),
+                            Collections.singletonMap(p.getPk(), current)).isEmpty()) {
+                            logger.debug("Payment {} changed status to {}", transactionId, status);
+                            return p;
+                        }
+                        stale = current;
+                        p = paymentDao.getByTransactionId(transactionId);
+                    }
+                    return null;
+                }
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Execute action holding locks of all given transactions.
+     * Stripes are acquired in ascending order and released when action returns,
+     * so concurrent calls can not deadlock on these locks. Action must store statuses with
+     * {@link PaymentDao#updateStatus}, locks only reduce conflicts inside this instance.
+     */
+    public void withLocks(Collection<String> transactionIds, Runnable action) {
+        boolean[] used = new boolean[STRIPES];
+        for (String id : transactionIds) {
+            used[stripe(id)] = true;
+        }
+        int locked = 0;
+        try {
+            for (; locked < STRIPES; locked++) {
+                if (used[locked]) {
+                    locks[locked].lock();
+                }
+            }
+            action.run();
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                if (used[i]) {
+                    locks[i].unlock();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.core.payment;
+
+import com.jprocessing.dao.PaymentDao;
+import com.jprocessing.entities.Payment;
+import java.util.Calendar;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.inject.Inject;
+import javax.inject.Named;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Moves stale pending payments to {@link Payment.STATUS#TIMEOUT}.
+ * Each sweep expires payments in bounded batches, every batch is selected by
+ * (status, start_time) index and updated with one bulk update, so sweep cost
+ * depends on number of expired payments and not on payments table size.
+ *
+ * @author rumatoest
+ */
+@Named("jpPendingPaymentSweeper")
+public class PendingPaymentSweeper {
+
+    private static final Logger logger = LoggerFactory.getLogger(PendingPaymentSweeper.class);
+
+    public static final long DEFAULT_TIMEOUT = TimeUnit.HOURS.toMillis(24);
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private final PaymentDao paymentDao;
+
+    private volatile long timeoutMillis = DEFAULT_TIMEOUT;
+
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+
+    private final AtomicLong sweeps = new AtomicLong();
+
+    private final AtomicLong totalSwept = new AtomicLong();
+
+    private volatile int lastSwept;
+
+    private volatile long lastSweepMillis;
+
+    @Inject
+    public PendingPaymentSweeper(PaymentDao paymentDao) {
+        this.paymentDao = paymentDao;
+    }
+
+    /**
+     * Return how long payment may stay pending
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public void setTimeoutMillis(long timeoutMillis) {
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("Timeout can not be negative: " + timeoutMillis);
+        }
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Return maximum number of payments updated in one transaction
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Expire all payments that are pending longer than timeout.
+     *
+     * @return Number of expired payments
+     */
+    public synchronized int sweep() {
+        long started = System.currentTimeMillis();
+        Calendar before = Calendar.getInstance();
+        before.setTimeInMillis(started - timeoutMillis);
+        Calendar now = Calendar.getInstance();
+        now.setTimeInMillis(started);
+
+        int size = batchSize;
+        int swept = 0;
+        int updated;
+        do {
+            updated = paymentDao.timeoutPending(before, now, size);
+            swept += updated;
+        } while (updated == size);
+
+        lastSwept = swept;
+        lastSweepMillis = System.currentTimeMillis() - started;
+        sweeps.incrementAndGet();
+        totalSwept.addAndGet(swept);
+        if (swept > 0) {
+            logger.info("Pending payments sweep expired {} payments in {} ms", swept, lastSweepMillis);
+        }
+        return swept;
+    }
+
+    /**
+     * Run sweep periodically with provided executor.
+     */
+    public ScheduledFuture<?> schedule(ScheduledExecutorService executor, long period, TimeUnit unit) {
+        return executor.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    sweep();
+                } catch (RuntimeException ex) {
+                    logger.error("Pending payments sweep failed", ex);
+                }
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Return number of payments expired by last sweep
+     */
+    public int getLastSwept() {
+        return lastSwept;
+    }
+
+    /**
+     * Return last sweep duration in milliseconds
+     */
+    public long getLastSweepMillis() {
+        return lastSweepMillis;
+    }
+
+    public long getSweepCount() {
+        return sweeps.get();
+    }
+
+    public long getTotalSwept() {
+        return totalSwept.get();
+    }
+}
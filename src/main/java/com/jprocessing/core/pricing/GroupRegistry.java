@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.core.pricing;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Interns customer group names to small integer ids.
+ * Ids are never reused, so group masks stay valid across catalog reloads.
+ *
+ * @author rumatoest
+ */
+public class GroupRegistry {
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    /**
+     * Return id of group, register group if it is unknown.
+     * Group names are case insensitive.
+     */
+    public int intern(String group) {
+        String g = normalize(group);
+        Integer id = ids.get(g);
+        if (id == null) {
+            synchronized (this) {
+                id = ids.get(g);
+                if (id == null) {
+                    id = nextId.getAndIncrement();
+                    ids.put(g, id);
+                }
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Return id of group or -1 if group is unknown.
+     */
+    public int idOf(String group) {
+        Integer id = ids.get(normalize(group));
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Return number of registered groups
+     */
+    public int size() {
+        return nextId.get();
+    }
+
+    /**
+     * Build mask of customer groups. Unknown groups are skipped,
+     * because there are no prices for them.
+     */
+    public GroupMask mask(Collection<String> groups) {
+        if (groups == null || groups.isEmpty()) {
+            return GroupMask.EMPTY;
+        }
+        long[] words = new long[(size() + 63) >>> 6];
+        for (String g : groups) {
+            int id = idOf(g);
+            if (id >= 0 && (id >>> 6) < words.length) {
+                words[id >>> 6] |= 1L << id;
+            }
+        }
+        return new GroupMask(words);
+    }
+
+    /**
+     * Build mask from comma separated group names, registering unknown groups.
+     */
+    GroupMask internAll(String commaSeparated) {
+        if (StringUtils.isBlank(commaSeparated)) {
+            return GroupMask.EMPTY;
+        }
+        String[] names = commaSeparated.split(",");
+        int[] idArr = new int[names.length];
+        int max = -1;
+        int n = 0;
+        for (String name : names) {
+            if (StringUtils.isBlank(name)) {
+                continue;
+            }
+            int id = intern(name);
+            idArr[n++] = id;
+            max = Math.max(max, id);
+        }
+        if (n == 0) {
+            return GroupMask.EMPTY;
+        }
+        long[] words = new long[(max >>> 6) + 1];
+        for (int i = 0; i < n; i++) {
+            words[idArr[i] >>> 6] |= 1L << idArr[i];
+        }
+        return new GroupMask(words);
+    }
+
+    private static String normalize(String group) {
+        return StringUtils.trimToEmpty(group).toUpperCase();
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.core.pricing;
+
+import com.jprocessing.entities.ProductPrice;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compiled price tiers of one product.
+ * Tiers are sorted by minimal quantity, so tiers applicable for quantity are found
+ * with binary search. Among applicable tiers the one with highest priority wins,
+ * ties are resolved in favour of higher minimal quantity and then lower value.
+ * Best tier is precomputed for every quantity threshold separately for tiers
+ * without groups and for tiers of each group, so lookup takes one binary search
+ * per group used by product tiers and customer.
+ *
+ * @author rumatoest
+ */
+final class PriceTiers {
+
+    static final PriceTiers EMPTY = new PriceTiers(new ProductPrice[0], new double[0], new int[0],
+        new double[0], new int[0], new int[0], new int[0][], new int[0][]);
+
+    private final ProductPrice[] prices;
+
+    private final double[] minQuantity;
+
+    private final int[] priority;
+
+    private final double[] value;
+
+    /**
+     * Index of best tier without groups among tiers [0..i] or -1
+     */
+    private final int[] bestOpen;
+
+    /**
+     * Sorted ids of groups used by tiers
+     */
+    private final int[] groupIds;
+
+    /**
+     * Ascending indexes of tiers restricted to group groupIds[g]
+     */
+    private final int[][] groupTiers;
+
+    /**
+     * Index of best tier among groupTiers[g][0..k]
+     */
+    private final int[][] groupBest;
+
+    private PriceTiers(ProductPrice[] prices, double[] minQuantity, int[] priority, double[] value,
+        int[] bestOpen, int[] groupIds, int[][] groupTiers, int[][] groupBest) {
+        this.prices = prices;
+        this.minQuantity = minQuantity;
+        this.priority = priority;
+        this.value = value;
+        this.bestOpen = bestOpen;
+        this.groupIds = groupIds;
+        this.groupTiers = groupTiers;
+        this.groupBest = groupBest;
+    }
+
+    static PriceTiers compile(List<ProductPrice> tiers, GroupRegistry registry) {
+        if (tiers.isEmpty()) {
+            return EMPTY;
+        }
+        ProductPrice[] sorted = tiers.toArray(new ProductPrice[tiers.size()]);
+        Arrays.sort(sorted, new Comparator<ProductPrice>() {
+
+            @Override
+            public int compare(ProductPrice a, ProductPrice b) {
+                return Double.compare(a.getMinQuantity(), b.getMinQuantity());
+            }
+        });
+
+        int n = sorted.length;
+        double[] minQuantity = new double[n];
+        int[] priority = new int[n];
+        double[] value = new double[n];
+        int[] bestOpen = new int[n];
+        TreeMap<Integer, List<Integer>> byGroup = new TreeMap<>();
+
+        int best = -1;
+        for (int i = 0; i < n; i++) {
+            ProductPrice pp = sorted[i];
+            minQuantity[i] = pp.getMinQuantity();
+            priority[i] = pp.getPriority();
+            value[i] = pp.getValue();
+            GroupMask gm = registry.internAll(pp.getGroupsString());
+            if (gm.isEmpty()) {
+                if (best < 0 || better(i, best, priority, minQuantity, value)) {
+                    best = i;
+                }
+            } else {
+                for (int g = gm.nextGroup(0); g >= 0; g = gm.nextGroup(g + 1)) {
+                    List<Integer> l = byGroup.get(g);
+                    if (l == null) {
+                        l = new ArrayList<>();
+                        byGroup.put(g, l);
+                    }
+                    l.add(i);
+                }
+            }
+            bestOpen[i] = best;
+        }
+
+        int[] groupIds = new int[byGroup.size()];
+        int[][] groupTiers = new int[groupIds.length][];
+        int[][] groupBest = new int[groupIds.length][];
+        int g = 0;
+        for (Map.Entry<Integer, List<Integer>> e : byGroup.entrySet()) {
+            List<Integer> l = e.getValue();
+            groupIds[g] = e.getKey();
+            groupTiers[g] = new int[l.size()];
+            groupBest[g] = new int[l.size()];
+            int b = -1;
+            for (int k = 0; k < l.size(); k++) {
+                int i = l.get(k);
+                if (b < 0 || better(i, b, priority, minQuantity, value)) {
+                    b = i;
+                }
+                groupTiers[g][k] = i;
+                groupBest[g][k] = b;
+            }
+            g++;
+        }
+        return new PriceTiers(sorted, minQuantity, priority, value, bestOpen, groupIds, groupTiers, groupBest);
+    }
+
+    private static boolean better(int a, int b, int[] priority, double[] minQuantity, double[] value) {
+        if (priority[a] != priority[b]) {
+            return priority[a] > priority[b];
+        }
+        if (minQuantity[a] != minQuantity[b]) {
+            return minQuantity[a] > minQuantity[b];
+        }
+        return value[a] < value[b];
+    }
+
+    /**
+     * Return index of best tier for customer groups and quantity or -1.
+     */
+    int resolve(GroupMask customerGroups, double quantity) {
+        int n = upperBound(quantity);
+        if (n == 0) {
+            return -1;
+        }
+        int best = bestOpen[n - 1];
+        for (int g = 0; g < groupIds.length; g++) {
+            if (!customerGroups.contains(groupIds[g])) {
+                continue;
+            }
+            int k = countBelow(groupTiers[g], n);
+            if (k > 0) {
+                int i = groupBest[g][k - 1];
+                if (best < 0 || better(i, best, priority, minQuantity, value)) {
+                    best = i;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Return number of ascending indexes less than provided limit.
+     */
+    private static int countBelow(int[] indexes, int limit) {
+        int lo = 0;
+        int hi = indexes.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (indexes[mid] < limit) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Return number of tiers with minimal quantity less or equal to quantity.
+     */
+    private int upperBound(double quantity) {
+        int lo = 0;
+        int hi = minQuantity.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (minQuantity[mid] <= quantity) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    ProductPrice priceAt(int index) {
+        return prices[index];
+    }
+
+    double valueAt(int index) {
+        return value[index];
+    }
+
+    int size() {
+        return prices.length;
+    }
+}
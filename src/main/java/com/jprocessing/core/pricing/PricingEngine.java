@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.core.pricing;
+
+import com.jprocessing.core.catalog.CatalogSnapshot;
+import com.jprocessing.core.catalog.ProductCatalog;
+import com.jprocessing.entities.ProductPrice;
+import java.util.Collection;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+/**
+ * Resolves best product price for customer groups and quantity.
+ * Price tiers from product catalog are compiled into sorted primitive arrays
+ * with interned group ids, compiled tiers are rebuilt automatically when
+ * catalog snapshot is replaced. Price lookups do not allocate objects.
+ *
+ * @see ProductCatalog
+ * @see ProductPrice
+ *
+ * @author rumatoest
+ */
+@Named("jpPricingEngine")
+public class PricingEngine {
+
+    private final ProductCatalog catalog;
+
+    private final GroupRegistry registry = new GroupRegistry();
+
+    private volatile Compiled compiled;
+
+    @Inject
+    public PricingEngine(ProductCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    /**
+     * Build customer group mask to be used for price lookups.
+     * Mask should be built once per customer (request) and reused.
+     */
+    public GroupMask groupMask(Collection<String> customerGroups) {
+        compiled();
+        return registry.mask(customerGroups);
+    }
+
+    /**
+     * Return best price for product or null if no price applicable.
+     *
+     * @param productPk Product primary key
+     * @param customerGroups Customer groups mask
+     * @param quantity Product quantity in order
+     */
+    public ProductPrice resolve(long productPk, GroupMask customerGroups, double quantity) {
+        Compiled c = compiled();
+        int p = c.snapshot.indexOf(productPk);
+        if (p < 0) {
+            return null;
+        }
+        PriceTiers t = c.tiers[p];
+        int i = t.resolve(customerGroups, quantity);
+        return i < 0 ? null : t.priceAt(i);
+    }
+
+    /**
+     * Return best unit price value for product or NaN if no price applicable.
+     *
+     * @see #resolve(long, GroupMask, double)
+     */
+    public double getUnitPrice(long productPk, GroupMask customerGroups, double quantity) {
+        Compiled c = compiled();
+        int p = c.snapshot.indexOf(productPk);
+        if (p < 0) {
+            return Double.NaN;
+        }
+        PriceTiers t = c.tiers[p];
+        int i = t.resolve(customerGroups, quantity);
+        return i < 0 ? Double.NaN : t.valueAt(i);
+    }
+
+    /**
+     * Resolve prices for whole cart (invoice) at once against the same catalog snapshot.
+     *
+     * @param productPks Products primary keys
+     * @param quantities Quantities for each product
+     * @param customerGroups Customer groups mask
+     * @param out Receives best price for each product or null if no price applicable
+     * @return Number of resolved prices
+     */
+    public int resolveAll(long[] productPks, double[] quantities, GroupMask customerGroups, ProductPrice[] out) {
+        checkBatch(productPks, quantities, out.length);
+        Compiled c = compiled();
+        int resolved = 0;
+        for (int k = 0; k < productPks.length; k++) {
+            int p = c.snapshot.indexOf(productPks[k]);
+            int i = p < 0 ? -1 : c.tiers[p].resolve(customerGroups, quantities[k]);
+            out[k] = i < 0 ? null : c.tiers[p].priceAt(i);
+            if (i >= 0) {
+                resolved++;
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Resolve unit prices for whole cart (invoice) at once against the same catalog snapshot.
+     *
+     * @param productPks Products primary keys
+     * @param quantities Quantities for each product
+     * @param customerGroups Customer groups mask
+     * @param out Receives unit price for each product or NaN if no price applicable
+     * @return Number of resolved prices
+     */
+    public int getUnitPrices(long[] productPks, double[] quantities, GroupMask customerGroups, double[] out) {
+        checkBatch(productPks, quantities, out.length);
+        Compiled c = compiled();
+        int resolved = 0;
+        for (int k = 0; k < productPks.length; k++) {
+            int p = c.snapshot.indexOf(productPks[k]);
+            int i = p < 0 ? -1 : c.tiers[p].resolve(customerGroups, quantities[k]);
+            out[k] = i < 0 ? Double.NaN : c.tiers[p].valueAt(i);
+            if (i >= 0) {
+                resolved++;
+            }
+        }
+        return resolved;
+    }
+
+    private static void checkBatch(long[] productPks, double[] quantities, int outLength) {
+        if (productPks.length != quantities.length || productPks.length > outLength) {
+            throw new IllegalArgumentException("Products, quantities and output arrays sizes do not match");
+        }
+    }
+
+    /**
+     * Return tiers compiled for current catalog snapshot, recompile if snapshot was changed.
+     */
+    private Compiled compiled() {
+        CatalogSnapshot s = catalog.getSnapshot();
+        Compiled c = this.compiled;
+        if (c == null || c.snapshot != s) {
+            synchronized (this) {
+                c = this.compiled;
+                if (c == null || c.snapshot != s) {
+                    c = new Compiled(s, registry);
+                    this.compiled = c;
+                }
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Price tiers compiled for specific catalog snapshot
+     */
+    private static final class Compiled {
+
+        final CatalogSnapshot snapshot;
+
+        final PriceTiers[] tiers;
+
+        Compiled(CatalogSnapshot snapshot, GroupRegistry registry) {
+            this.snapshot = snapshot;
+            this.tiers = new PriceTiers[snapshot.size()];
+            for (int i = 0; i < tiers.length; i++) {
+                tiers[i] = PriceTiers.compile(snapshot.getPricesAt(i), registry);
+            }
+        }
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.core.subscription;
+
+import com.jprocessing.core.invoice.InvoiceCalculator;
+import com.jprocessing.core.pricing.GroupMask;
+import com.jprocessing.core.pricing.PricingEngine;
+import com.jprocessing.dao.SubscriptionDao;
+import com.jprocessing.entities.Invoice;
+import com.jprocessing.entities.InvoiceItem;
+import com.jprocessing.entities.JpEntity;
+import com.jprocessing.entities.Liability;
+import com.jprocessing.entities.Product;
+import com.jprocessing.entities.Subscription;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import javax.inject.Inject;
+import javax.inject.Named;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bulk subscription renewal.
+ * Due subscriptions are split into partitions by customer id, each partition is processed
+ * by its own thread, so customers never share a thread and partitions never compete
+ * for the same rows. Every due subscription gets invoice with one item and liability
+ * valid until next billing time, next billing time is moved by product subscription period.
+ * Records are written by chunks, one transaction per chunk.
+ *
+ * Subscription is renewed once per run, subscriptions that missed several periods
+ * are renewed by following runs.
+ *
+ * @author rumatoest
+ */
+@Named("jpRenewalEngine")
+public class RenewalEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(RenewalEngine.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private final SubscriptionDao subscriptionDao;
+
+    private final PricingEngine pricingEngine;
+
+    private final InvoiceCalculator invoiceCalculator;
+
+    private volatile String currency = "USD";
+
+    private volatile int partitions = Runtime.getRuntime().availableProcessors();
+
+    private volatile int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    private volatile int lastRenewed;
+
+    private volatile int lastSkipped;
+
+    private volatile int lastFailed;
+
+    private volatile long lastRunMillis;
+
+    @Inject
+    public RenewalEngine(SubscriptionDao subscriptionDao, PricingEngine pricingEngine,
+        InvoiceCalculator invoiceCalculator) {
+        this.subscriptionDao = subscriptionDao;
+        this.pricingEngine = pricingEngine;
+        this.invoiceCalculator = invoiceCalculator;
+    }
+
+    /**
+     * Return currency used for generated invoices
+     */
+    public String getCurrency() {
+        return currency;
+    }
+
+    /**
+     * Set currency used for generated invoices, product prices are expected in this currency
+     */
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+
+    /**
+     * Return number of customer partitions processed in parallel
+     */
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public void setPartitions(int partitions) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("Partitions number must be positive: " + partitions);
+        }
+        this.partitions = partitions;
+    }
+
+    /**
+     * Return number of subscriptions renewed in one transaction
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Renew all subscriptions due till provided time.
+     * Subscriptions failed to renew are counted and logged, other subscriptions are still renewed.
+     *
+     * @return Number of renewed subscriptions
+     */
+    public synchronized int renew(final Calendar until) {
+        long started = System.currentTimeMillis();
+        final int parts = partitions;
+        final int chunk = chunkSize;
+        final Calendar now = Calendar.getInstance();
+        final AtomicInteger skipped = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final Function<Subscription, List<? extends JpEntity<Long>>> renewer
+            = new Function<Subscription, List<? extends JpEntity<Long>>>() {
+
+                @Override
+                public List<? extends JpEntity<Long>> apply(Subscription s) {
+                    List<? extends JpEntity<Long>> created = renewSubscription(s, now);
+                    if (created == null) {
+                        skipped.incrementAndGet();
+                    }
+                    return created;
+                }
+            };
+        final BiConsumer<Subscription, RuntimeException> onFailure = new BiConsumer<Subscription, RuntimeException>() {
+
+            @Override
+            public void accept(Subscription s, RuntimeException ex) {
+                failed.incrementAndGet();
+                logger.error("Subscription " + s.getPk() + " renewal failed, it stays due", ex);
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(parts);
+        int renewed = 0;
+        Throwable error = null;
+        try {
+            List<Future<Integer>> results = new ArrayList<>(parts);
+            for (int i = 0; i < parts; i++) {
+                final int partition = i;
+                results.add(executor.submit(new Callable<Integer>() {
+
+                    @Override
+                    public Integer call() {
+                        return subscriptionDao.renewDue(until, parts, partition, chunk, renewer, onFailure);
+                    }
+                }));
+            }
+            // Partition failure must not interrupt other partitions in the middle of a chunk
+            for (Future<Integer> f : results) {
+                try {
+                    renewed += f.get();
+                } catch (ExecutionException ex) {
+                    if (error == null) {
+                        error = ex.getCause();
+                    } else {
+                        error.addSuppressed(ex.getCause());
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Subscription renewal interrupted", ex);
+        } finally {
+            executor.shutdown();
+        }
+
+        lastRenewed = renewed;
+        lastSkipped = skipped.get();
+        lastFailed = failed.get();
+        lastRunMillis = System.currentTimeMillis() - started;
+        if (error != null) {
+            throw new IllegalStateException("Subscription renewal failed", error);
+        }
+        logger.info("Renewed {} subscriptions, skipped {}, failed {} in {} ms",
+            renewed, lastSkipped, lastFailed, lastRunMillis);
+        return renewed;
+    }
+
+    /**
+     * Create invoice and liability for one subscription period and move subscription
+     * next billing time.
+     *
+     * @return Entities to persist or null if subscription can not be renewed
+     */
+    protected List<? extends JpEntity<Long>> renewSubscription(Subscription s, Calendar now) {
+        Product product = s.getProduct();
+        if (!product.hasSubscription() || product.isDeleted()) {
+            logger.warn("Subscription {} product {} can not be renewed", s.getPk(), product.getSku());
+            return null;
+        }
+        double unitPrice = pricingEngine.getUnitPrice(product.getPk(), customerGroups(s),
+            s.getQuantity().doubleValue());
+        if (Double.isNaN(unitPrice)) {
+            logger.warn("Subscription {} has no price for product {}", s.getPk(), product.getSku());
+            return null;
+        }
+        BigDecimal price = invoiceCalculator.unitPrice(unitPrice, currency);
+        BigDecimal total = invoiceCalculator.lineTotal(price, s.getQuantity(), currency);
+        Calendar next = product.nextBillingTime(s.getNextBillingTime());
+
+        Invoice invoice = new Invoice();
+        invoice.setCustomer(s.getCustomer());
+        invoice.setCreateTime(now);
+        invoice.setTotal(total);
+
+        InvoiceItem item = new InvoiceItem();
+        item.setInvoice(invoice);
+        item.setProduct(product);
+        item.setProductPrice(price);
+        item.setQuantity(s.getQuantity());
+        item.setCurrency(currency);
+        invoice.setItems(Collections.singleton(item));
+
+        Liability liability = new Liability();
+        liability.setCustomer(s.getCustomer());
+        liability.setProduct(product);
+        liability.setCreateTime(now);
+        liability.setExpireTime(next);
+        liability.setProductPrice(price);
+        liability.setQuantity(s.getQuantity());
+        liability.setCurrency(currency);
+        liability.setPriceTotal(total);
+
+        s.setNextBillingTime(next);
+        return Arrays.asList(invoice, liability);
+    }
+
+    /**
+     * Return customer groups used for subscription price lookup.
+     * Customers have no groups by default, so only prices without groups apply.
+     */
+    protected GroupMask customerGroups(Subscription s) {
+        return GroupMask.EMPTY;
+    }
+
+    /**
+     * Run renewal periodically with provided executor.
+     */
+    public ScheduledFuture<?> schedule(ScheduledExecutorService executor, long period, TimeUnit unit) {
+        return executor.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    renew(Calendar.getInstance());
+                } catch (RuntimeException ex) {
+                    logger.error("Subscription renewal failed", ex);
+                }
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Return number of subscriptions renewed by last run
+     */
+    public int getLastRenewed() {
+        return lastRenewed;
+    }
+
+    /**
+     * Return number of due subscriptions skipped by last run
+     */
+    public int getLastSkipped() {
+        return lastSkipped;
+    }
+
+    /**
+     * Return number of due subscriptions failed to renew by last run,
+     * they stay due and are retried by next run
+     */
+    public int getLastFailed() {
+        return lastFailed;
+    }
+
+    /**
+     * Return last run duration in milliseconds
+     */
+    public long getLastRunMillis() {
+        return lastRunMillis;
+    }
+}
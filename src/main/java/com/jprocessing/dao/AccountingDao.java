@@ -22,6 +22,9 @@
 package com.jprocessing.dao;
 
 import com.jprocessing.entities.Accounting;
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.List;
 
 /**
  *
@@ -29,4 +32,47 @@ import com.jprocessing.entities.Accounting;
  */
 public interface AccountingDao extends JpaDao<Long, Accounting> {
 
+    /**
+     * Return latest summary record of customer or null if there is no one.
+     */
+    Accounting getLastSummary(Long customerPk);
+
+    /**
+     * Return sum of customer's debit and credit records.
+     *
+     * @param customerPk Customer primary key
+     * @param after Sum records with timestamp strictly after this time, null for no lower bound
+     * @param until Sum records with timestamp up to this time (inclusive), null for no upper bound
+     * @return Not null
+     */
+    BigDecimal sumAmount(Long customerPk, Calendar after, Calendar until);
+
+    /**
+     * Return primary keys of customers who have debit or credit records
+     * with timestamp after provided time.
+     *
+     * @param after Null means any time
+     */
+    List<Long> findCustomersWithRecordsAfter(Calendar after);
+
+    /**
+     * Persist credit record only if customer balance covers it, in one transaction.
+     * Customer row is locked before balance is computed, so concurrent withdrawals
+     * of the same customer, also from other nodes, are serialized by database and can not
+     * overdraw account. Inside unit of work row stays locked until it ends.
+     *
+     * @param credit Credit record with negative amount
+     * @return Customer balance after credit or null if balance is not enough and record was not persisted
+     * @throws IllegalArgumentException If customer does not exist
+     */
+    BigDecimal persistIfCovered(Accounting credit);
+
+    /**
+     * Create summary record of customer balance up to provided time in one transaction.
+     * Summary amount is the latest summary amount plus all debit and credit records
+     * after it and up to provided time.
+     *
+     * @return Created summary or null if latest summary is not older than provided time
+     */
+    Accounting createSummary(Long customerPk, Calendar until);
 }
@@ -22,6 +22,7 @@
 package com.jprocessing.dao;
 
 import com.jprocessing.entities.InvoiceItem;
+import java.util.List;
 
 /**
  *
@@ -29,4 +30,11 @@ import com.jprocessing.entities.InvoiceItem;
  */
 public interface InvoiceItemDao extends JpaDao<Long, InvoiceItem> {
 
+    /**
+     * Return all items of invoice ordered by primary key.
+     *
+     * @param fetchGraph Name of entity graph (e.g. {@link InvoiceItem#GRAPH_PRODUCT}),
+     * null to use entity mapping defaults
+     */
+    List<InvoiceItem> findByInvoice(Long invoicePk, String fetchGraph);
 }
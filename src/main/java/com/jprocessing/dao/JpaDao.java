@@ -23,6 +23,11 @@ package com.jprocessing.dao;
 
 import com.jprocessing.entities.JpEntity;
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 import javax.persistence.EntityExistsException;
 import javax.persistence.EntityNotFoundException;
 
@@ -37,16 +42,35 @@ public interface JpaDao<PK extends Serializable, E extends JpEntity> {
      */
     void persist(E entity) throws EntityExistsException;
 
+    /**
+     * Persist all entities (create) to database using single entity manager.
+     * Entities are flushed to database in JDBC batches and committed in chunks,
+     * so one failed chunk will not rollback already committed ones.
+     */
+    void persistAll(Collection<E> entities) throws EntityExistsException;
+
     /**
      * Persist entity to database or merge it if entity already exist.
      */
     void persistOrMerge(E entity);
 
+    /**
+     * Persist or merge all entities using single entity manager.
+     * Entities are written in batches and committed in chunks.
+     */
+    void persistOrMergeAll(Collection<E> entities);
+
     /**
      * Merge the state of the given entity into the current persistence context.
      */
     void merge(E entity);
 
+    /**
+     * Merge the state of all given entities using single entity manager.
+     * Entities are flushed to database in JDBC batches and committed in chunks.
+     */
+    void mergeAll(Collection<E> entities);
+
     /**
      * Refresh the state of the instance from the database, overwriting changes
      * made to the entity, if any.
@@ -63,15 +87,146 @@ public interface JpaDao<PK extends Serializable, E extends JpEntity> {
      */
     void remove(PK pk);
 
+    /**
+     * Update all entities matching restriction with single bulk statement in one transaction.
+     * Entities are not loaded, so entity listeners and version checks are not applied.
+     * Entities of DAO type are evicted from shared cache after update.
+     * Inside unit of work cache is evicted after it is committed and entities
+     * of unit of work matching restriction are refreshed, so number of matching
+     * entities is limited there by DAO implementation.
+     *
+     * @param values New values by entity attribute name
+     * @param restriction Entities to update, use {@link Restriction#none()} to update all
+     * @return Number of updated entities
+     * @throws IllegalStateException If too many entities match restriction inside unit of work
+     */
+    int updateWhere(Map<String, ?> values, Restriction<E> restriction);
+
+    /**
+     * Delete all entities matching restriction with single bulk statement in one transaction.
+     * Entities are not loaded, so cascades and entity listeners are not applied.
+     * Entities of DAO type are evicted from shared cache after delete.
+     * Inside unit of work cache is evicted after it is committed and entities
+     * of unit of work matching restriction are detached, so number of matching
+     * entities is limited there by DAO implementation.
+     *
+     * @param restriction Entities to delete, use {@link Restriction#none()} to delete all
+     * @return Number of deleted entities
+     * @throws IllegalStateException If too many entities match restriction inside unit of work
+     */
+    int deleteWhere(Restriction<E> restriction);
+
     /**
      * Return single entity by primary key or null if nothing was found.
      * Means that primary key field is unique.
      */
     E getByPk(PK pk);
 
+    /**
+     * Return single entity by primary key with associations from named entity graph.
+     *
+     * @param fetchGraph Name of entity graph, null to use entity mapping defaults
+     */
+    E getByPk(PK pk, String fetchGraph);
+
+    /**
+     * Return entities by primary keys with associations from named entity graph.
+     * Entities are loaded in one query per 500 keys.
+     *
+     * @param fetchGraph Name of entity graph, null to use entity mapping defaults
+     * @return Entities in keys order, not existing keys are skipped
+     */
+    List<E> findByPks(Collection<PK> pks, String fetchGraph);
+
+    /**
+     * Stream all entities matching restriction ordered by primary key.
+     * Entities are loaded by chunks of fetchSize rows using keyset pagination
+     * on primary key, persistence context is cleared before each next chunk,
+     * so memory usage does not depend on number of rows. Inside
+     * {@link UnitOfWork} context is only flushed, loaded entities stay managed.
+     * Returned stream holds entity manager open and must be closed.
+     *
+     * @param restriction Query restriction, null means all entities
+     * @param fetchSize Number of entities loaded per query, also passed to provider as JDBC fetch size
+     */
+    Stream<E> streamByRestriction(Restriction<E> restriction, int fetchSize);
+
+    /**
+     * Pass all entities matching restriction to consumer ordered by primary key.
+     *
+     * @see #streamByRestriction(Restriction, int)
+     */
+    void forEachByRestriction(Restriction<E> restriction, int fetchSize, Consumer<? super E> consumer);
+
+    /**
+     * Return projections of all entities matching restriction ordered by primary key.
+     *
+     * @see #findProjected(Class, Restriction, int, String...)
+     */
+    <R> List<R> findProjected(Class<R> resultClass, Restriction<E> restriction, String... attributes);
+
+    /**
+     * Return projections of entities matching restriction ordered by primary key.
+     * Only listed attributes are selected and passed to result class constructor
+     * in the same order, entities are not loaded into persistence context at all.
+     * Nested attributes of associations (e.g. "product.sku") are joined with inner join.
+     *
+     * @param resultClass Class with public constructor matching attribute types
+     * @param restriction Query restriction, null means all entities
+     * @param maxResults Maximum number of results, 0 means no limit
+     * @param attributes Entity attributes, nested attribute names are separated by dot
+     */
+    <R> List<R> findProjected(Class<R> resultClass, Restriction<E> restriction, int maxResults,
+        String... attributes);
+
+    /**
+     * Return page of entities ordered by primary key.
+     *
+     * @see #findSlice(Restriction, String, boolean, int, String)
+     */
+    Slice<E> findSlice(Restriction<E> restriction, int size, String continuationToken);
+
+    /**
+     * Return page of entities using keyset pagination.
+     * Entities are ordered by sort attribute and then by primary key, next page
+     * starts right after the last entity of previous page, so query cost does not
+     * depend on page depth. Sort attribute must be not null and should be indexed.
+     *
+     * @param restriction Query restriction, null means all entities
+     * @param sortAttribute Entity attribute to order by or null to order by primary key only
+     * @param descending Sort direction
+     * @param size Maximum number of entities on page
+     * @param continuationToken Token from previous page or null for the first page
+     * @throws IllegalArgumentException If token was issued for other sort order or sort attribute is nullable
+     */
+    Slice<E> findSlice(Restriction<E> restriction, String sortAttribute, boolean descending,
+        int size, String continuationToken);
+
+    /**
+     * Remove entity from shared (second level) cache of persistence provider.
+     * Should be called after entity was changed bypassing this DAO
+     * (native SQL, other application or node without shared cache).
+     */
+    void evictCache(PK pk);
+
+    /**
+     * Remove all entities of DAO type from shared (second level) cache.
+     */
+    void evictCache();
+
     /**
      * Force to fetch all related data with FetchType.LAZY type.
+     * Entity is reloaded with its fetch plan in one query.
+     *
+     * @return Loaded entity or null if it does not exist anymore
      */
     E fetchRelated(E entity);
 
+    /**
+     * Force to fetch all related data for many entities with a constant number of queries.
+     *
+     * @return Loaded entities in the same order, entities that do not exist anymore are skipped
+     */
+    List<E> fetchRelated(Collection<E> entities);
+
 }
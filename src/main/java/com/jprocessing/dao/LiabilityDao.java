@@ -22,6 +22,8 @@
 package com.jprocessing.dao;
 
 import com.jprocessing.entities.Liability;
+import java.util.Calendar;
+import java.util.List;
 
 /**
  *
@@ -29,4 +31,23 @@ import com.jprocessing.entities.Liability;
  */
 public interface LiabilityDao extends JpaDao<Long, Liability> {
 
+    /**
+     * Return next chunk of liabilities that expire inside time window.
+     * Liabilities are ordered by expire time and primary key, so whole window is read
+     * with keyset pagination using the last returned liability and expire time index.
+     *
+     * @param after Window start (exclusive)
+     * @param until Window end (inclusive)
+     * @param last Last liability of previous chunk, null for first chunk
+     * @param limit Maximum number of liabilities to return
+     */
+    List<Liability> findExpiring(Calendar after, Calendar until, Liability last, int limit);
+
+    /**
+     * Same as {@link #findExpiring(Calendar, Calendar, Liability, int)} with associations
+     * from named entity graph, for example {@link Liability#GRAPH_PRODUCT}.
+     *
+     * @param fetchGraph Name of entity graph, null to use entity mapping defaults
+     */
+    List<Liability> findExpiring(Calendar after, Calendar until, Liability last, int limit, String fetchGraph);
 }
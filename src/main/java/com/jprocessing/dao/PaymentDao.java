@@ -22,11 +22,79 @@
 package com.jprocessing.dao;
 
 import com.jprocessing.entities.Payment;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  *
  * @author rumatoest
  */
 public interface PaymentDao extends JpaDao<Long, Payment> {
-    
+
+    /**
+     * Return payment by unique transaction id or null if nothing was found.
+     */
+    Payment getByTransactionId(String transactionId);
+
+    /**
+     * Return all payments with provided transaction ids in one query.
+     */
+    List<Payment> findByTransactionIds(Collection<String> transactionIds);
+
+    /**
+     * Store status and end time of payments with conditional updates in one transaction.
+     * Payment row is updated only if its stored status is still the expected one,
+     * so status changed concurrently by timeout sweep, other thread or other node
+     * is never overwritten. Inside unit of work payments are detached before update,
+     * so their changes are written only by conditional statements.
+     *
+     * @param payments Payments with new status and end time
+     * @param expected Stored status of every payment by primary key
+     * @return Primary keys of payments that were not updated because their status was changed
+     */
+    Set<Long> updateStatus(Collection<Payment> payments, Map<Long, Payment.STATUS> expected);
+
+    /**
+     * Move at most limit pending payments started before given time to timeout status.
+     * Candidates are selected through (status, start_time) index in start time order
+     * and updated with single bulk update in one transaction.
+     * Payments that left pending status concurrently are not touched.
+     *
+     * @param startedBefore Payments started before this time are expired
+     * @param endTime End time to set for expired payments
+     * @param limit Maximum number of payments to update
+     * @return Number of updated payments
+     */
+    int timeoutPending(Calendar startedBefore, Calendar endTime, int limit);
+
+    /**
+     * Convert properties of all payments from java Properties format to compact format.
+     * Payments are scanned by primary key in chunks, each chunk is committed separately,
+     * so migration may be interrupted and started again.
+     *
+     * @param batchSize Number of payments loaded and committed at once
+     * @return Number of converted payments
+     * @throws IllegalStateException If called inside {@link UnitOfWork}
+     * @see com.jprocessing.entities.PropertiesCodec
+     */
+    int migrateProperties(int batchSize);
+
+    /**
+     * Delete payments with provided status started before given time with single bulk statement.
+     *
+     * @return Number of deleted payments
+     */
+    int purge(Payment.STATUS status, Calendar startedBefore);
+
+    /**
+     * Return summaries of payments matching restriction ordered by primary key.
+     * Only summary columns are selected, payments are not loaded as entities.
+     *
+     * @param restriction Query restriction, null means all payments
+     * @param maxResults Maximum number of summaries, 0 means no limit
+     */
+    List<PaymentSummary> findSummaries(Restriction<Payment> restriction, int maxResults);
 }
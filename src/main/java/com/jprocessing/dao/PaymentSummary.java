@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.dao;
+
+import com.jprocessing.entities.Payment;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Calendar;
+
+/**
+ * Lightweight read only view of payment for listings and reports.
+ * Holds only columns needed to show payment, without properties and associations.
+ *
+ * @see PaymentDao#findSummaries(Restriction, int)
+ *
+ * @author rumatoest
+ */
+public class PaymentSummary implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Long pk;
+
+    private final String transactionId;
+
+    private final Payment.STATUS status;
+
+    private final BigDecimal amount;
+
+    private final String currency;
+
+    private final Calendar startTime;
+
+    public PaymentSummary(Long pk, String transactionId, Payment.STATUS status, BigDecimal amount,
+        String currency, Calendar startTime) {
+        this.pk = pk;
+        this.transactionId = transactionId;
+        this.status = status;
+        this.amount = amount;
+        this.currency = currency;
+        this.startTime = startTime;
+    }
+
+    public Long getPk() {
+        return pk;
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    public Payment.STATUS getStatus() {
+        return status;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public Calendar getStartTime() {
+        return startTime;
+    }
+
+    @Override
+    public String toString() {
+        return "PaymentSummary{" + "pk=" + pk + ", transactionId=" + transactionId + ", status=" + status
+            + ", amount=" + amount + ", currency=" + currency + '}';
+    }
+}
@@ -22,6 +22,7 @@
 package com.jprocessing.dao;
 
 import com.jprocessing.entities.Product;
+import java.util.List;
 
 /**
  *
@@ -29,4 +30,13 @@ import com.jprocessing.entities.Product;
  */
 public interface ProductDao extends JpaDao<Long, Product> {
 
+    /**
+     * Return product by unique SKU code.
+     */
+    Product getBySku(String sku);
+
+    /**
+     * Return all products that are not marked as deleted.
+     */
+    List<Product> findNotDeleted();
 }
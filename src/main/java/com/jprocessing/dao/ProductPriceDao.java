@@ -22,6 +22,7 @@
 package com.jprocessing.dao;
 
 import com.jprocessing.entities.ProductPrice;
+import java.util.List;
 
 /**
  *
@@ -29,4 +30,9 @@ import com.jprocessing.entities.ProductPrice;
  */
 public interface ProductPriceDao extends JpaDao<Long, ProductPrice> {
 
+    /**
+     * Return all prices of products that are not marked as deleted.
+     * Related products are fetched in the same query.
+     */
+    List<ProductPrice> findForNotDeletedProducts();
 }
@@ -21,7 +21,12 @@
  */
 package com.jprocessing.dao;
 
+import com.jprocessing.entities.JpEntity;
 import com.jprocessing.entities.Subscription;
+import java.util.Calendar;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 /**
  *
@@ -29,4 +34,31 @@ import com.jprocessing.entities.Subscription;
  */
 public interface SubscriptionDao extends JpaDao<Long, Subscription> {
 
+    /**
+     * Renew active subscriptions with next billing time not after provided time.
+     * Only subscriptions of one customer partition (customer id modulo partitions)
+     * are processed, so partitions may be renewed concurrently without touching
+     * the same customers. Subscriptions are loaded with products in (next billing time,
+     * primary key) order by chunks, so scan follows next billing time index, and each chunk
+     * is processed in a separate transaction: entities returned by renewer are persisted
+     * and changes made by renewer to subscription are stored. Subscription is renewed
+     * at most once per call even if its new billing time is still due.
+     * <p>
+     * Failure of one subscription does not stop renewal: its changes are dropped and
+     * it is reported to failure handler, so it stays due for next run. If chunk transaction
+     * fails on commit, its subscriptions are renewed again one per transaction.
+     * Inside unit of work commit failures are not isolated and abort renewal.
+     *
+     * @param until Renew subscriptions due before or at this time
+     * @param partitions Number of customer partitions
+     * @param partition Partition to process (0..partitions-1)
+     * @param chunkSize Number of subscriptions per transaction
+     * @param renewer Returns new entities to persist for subscription,
+     * null or empty list if subscription should be skipped
+     * @param failed Receives subscriptions that were not renewed because of error
+     * @return Number of renewed subscriptions
+     */
+    int renewDue(Calendar until, int partitions, int partition, int chunkSize,
+        Function<Subscription, List<? extends JpEntity<Long>>> renewer,
+        BiConsumer<Subscription, RuntimeException> failed);
 }
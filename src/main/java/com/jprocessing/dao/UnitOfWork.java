@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs several DAO operations with one entity manager and one transaction
+ * bound to current thread.
+ * <p>
+ * DAO entity managers created inside unit of work for the same entity manager factory
+ * join it: close is ignored, transaction begin does nothing, commit only flushes
+ * changes and rollback marks transaction for rollback. Whole work is committed
+ * when it returns and rolled back when it throws. Nested units of work join outer one,
+ * if nested work throws, outer one is marked for rollback even if it catches exception.
+ * <p>
+ * Entities returned by DAOs inside unit of work stay managed until it ends, so
+ * repeated lookups are served from persistence context. Batch writes and streams
+ * never clear persistence context of unit of work, they only flush it, so very large
+ * batches should run outside of unit of work.
+ *
+ * @author rumatoest
+ */
+@Named("jpUnitOfWork")
+public class UnitOfWork {
+
+    private static final Logger logger = LoggerFactory.getLogger(UnitOfWork.class);
+
+    private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<>();
+
+    private final EntityManagerFactory emf;
+
+    @Inject
+    public UnitOfWork(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    /**
+     * Run work in unit of work, joining current one if present.
+     */
+    public void run(final Runnable work) {
+        call(new Supplier<Void>() {
+
+            @Override
+            public Void get() {
+                work.run();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Run work in unit of work, joining current one if present.
+     * Exception thrown by work joined to outer unit of work marks it for rollback.
+     *
+     * @return Work result
+     * @throws IllegalStateException If current thread runs unit of work for other entity manager factory
+     */
+    public <T> T call(Supplier<T> work) {
+        Scope outer = CURRENT.get();
+        if (outer != null) {
+            if (outer.emf != emf) {
+                throw new IllegalStateException("Thread already runs unit of work for other entity manager factory");
+            }
+            try {
+                return work.get();
+            } catch (RuntimeException | Error ex) {
+                // Caller may catch it, but changes already flushed by nested work must not be committed
+                outer.em.getTransaction().setRollbackOnly();
+                throw ex;
+            }
+        }
+
+        Scope scope = new Scope(emf, emf.createEntityManager());
+        CURRENT.set(scope);
+        boolean committed = false;
+        try {
+            scope.em.getTransaction().begin();
+            T result = work.get();
+            scope.em.getTransaction().commit();
+            committed = true;
+            return result;
+        } finally {
+            try {
+                if (scope.em.getTransaction().isActive()) {
+                    scope.em.getTransaction().rollback();
+                }
+            } finally {
+                CURRENT.remove();
+                scope.em.close();
+                if (committed) {
+                    fire(scope.afterCommit, "commit");
+                } else {
+                    fire(scope.onRollback, "rollback");
+                }
+                fire(scope.afterCompletion, "completion");
+            }
+        }
+    }
+
+    /**
+     * Return true if current thread runs unit of work
+     */
+    public static boolean isActive() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * Return entity manager of current unit of work, that must not be closed and
+     * whose transaction must not be committed by caller.
+     *
+     * @return Null if there is no unit of work for entity manager factory in current thread
+     */
+    public static EntityManager getEntityManager(EntityManagerFactory emf) {
+        Scope s = CURRENT.get();
+        return s != null && s.emf == emf ? s.joined : null;
+    }
+
+    /**
+     * Register action executed after current unit of work is rolled back,
+     * for example to drop entities cached by DAO. Does nothing without unit of work.
+     */
+    public static void onRollback(EntityManagerFactory emf, Runnable action) {
+        Scope s = CURRENT.get();
+        if (s != null && s.emf == emf) {
+            s.onRollback = add(s.onRollback, action);
+        }
+    }
+
+    /**
+     * Register action executed after current unit of work is committed,
+     * for example to evict shared cache. Without unit of work action is executed right away,
+     * so it should be called after DAO committed its own transaction.
+     */
+    public static void afterCommit(EntityManagerFactory emf, Runnable action) {
+        Scope s = CURRENT.get();
+        if (s != null && s.emf == emf) {
+            s.afterCommit = add(s.afterCommit, action);
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Register action executed after current unit of work is committed or rolled back,
+     * for example to release locks. Without unit of work action is executed right away.
+     */
+    public static void afterCompletion(EntityManagerFactory emf, Runnable action) {
+        Scope s = CURRENT.get();
+        if (s != null && s.emf == emf) {
+            s.afterCompletion = add(s.afterCompletion, action);
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Same as {@link #onRollback(EntityManagerFactory, Runnable)} for this unit of work factory
+     */
+    public void onRollback(Runnable action) {
+        onRollback(emf, action);
+    }
+
+    /**
+     * Same as {@link #afterCommit(EntityManagerFactory, Runnable)} for this unit of work factory
+     */
+    public void afterCommit(Runnable action) {
+        afterCommit(emf, action);
+    }
+
+    /**
+     * Same as {@link #afterCompletion(EntityManagerFactory, Runnable)} for this unit of work factory
+     */
+    public void afterCompletion(Runnable action) {
+        afterCompletion(emf, action);
+    }
+
+    /**
+     * Return true if current thread runs unit of work of this factory
+     */
+    public boolean isJoined() {
+        return getEntityManager(emf) != null;
+    }
+
+    private static List<Runnable> add(List<Runnable> actions, Runnable action) {
+        List<Runnable> l = actions == null ? new ArrayList<Runnable>() : actions;
+        l.add(action);
+        return l;
+    }
+
+    private static void fire(List<Runnable> actions, String phase) {
+        if (actions == null) {
+            return;
+        }
+        for (Runnable r : actions) {
+            try {
+                r.run();
+            } catch (RuntimeException ex) {
+                logger.error("Unit of work " + phase + " action failed", ex);
+            }
+        }
+    }
+
+    /**
+     * Entity manager and transaction of one unit of work
+     */
+    private static class Scope {
+
+        final EntityManagerFactory emf;
+
+        final EntityManager em;
+
+        final EntityManager joined;
+
+        List<Runnable> onRollback;
+
+        List<Runnable> afterCommit;
+
+        List<Runnable> afterCompletion;
+
+        Scope(EntityManagerFactory emf, final EntityManager em) {
+            this.emf = emf;
+            this.em = em;
+            final EntityTransaction tx = (EntityTransaction)Proxy.newProxyInstance(
+                UnitOfWork.class.getClassLoader(), new Class<?>[]{EntityTransaction.class},
+                new JoinedHandler(em.getTransaction()) {
+
+                    @Override
+                    Object intercept(Object proxy, Method method) {
+                        switch (method.getName()) {
+                            case "begin":
+                                return null;
+                            case "commit":
+                                if (!em.getTransaction().getRollbackOnly()) {
+                                    em.flush();
+                                }
+                                return null;
+                            case "rollback":
+                                em.getTransaction().setRollbackOnly();
+                                return null;
+                            default:
+                                return NOT_INTERCEPTED;
+                        }
+                    }
+                });
+            this.joined = (EntityManager)Proxy.newProxyInstance(
+                UnitOfWork.class.getClassLoader(), new Class<?>[]{EntityManager.class},
+                new JoinedHandler(em) {
+
+                    @Override
+                    Object intercept(Object proxy, Method method) {
+                        switch (method.getName()) {
+                            case "close":
+                                return null;
+                            case "getTransaction":
+                                return tx;
+                            default:
+                                return NOT_INTERCEPTED;
+                        }
+                    }
+                });
+        }
+    }
+
+    /**
+     * Delegates calls to target object except intercepted ones
+     */
+    private abstract static class JoinedHandler implements InvocationHandler {
+
+        static final Object NOT_INTERCEPTED = new Object();
+
+        private final Object target;
+
+        JoinedHandler(Object target) {
+            this.target = target;
+        }
+
+        abstract Object intercept(Object proxy, Method method);
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return "Unit of work " + target;
+                }
+            }
+            Object result = intercept(proxy, method);
+            if (result != NOT_INTERCEPTED) {
+                return result;
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+}
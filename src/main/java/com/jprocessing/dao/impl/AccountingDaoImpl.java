@@ -23,8 +23,19 @@ package com.jprocessing.dao.impl;
 
 import com.jprocessing.dao.AccountingDao;
 import com.jprocessing.entities.Accounting;
+import com.jprocessing.entities.Customer;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
 import javax.inject.Inject;
+import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.LockModeType;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
 
 /**
  *
@@ -38,8 +49,145 @@ public class AccountingDaoImpl extends JpaDaoImpl<Long, Accounting> implements A
     }
 
     @Override
-    public Accounting fetchRelated(Accounting entity) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public Accounting getLastSummary(Long customerPk) {
+        EntityManager em = createEntityManager();
+        try {
+            return getLastSummary(em, customerPk);
+        } finally {
+            em.close();
+        }
+    }
+
+    private Accounting getLastSummary(EntityManager em, Long customerPk) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Accounting> cq = cb.createQuery(Accounting.class);
+        Root<Accounting> root = cq.from(Accounting.class);
+        cq.select(root)
+            .where(cb.equal(root.get("customer").get("pk"), customerPk),
+                cb.equal(root.get("recordType"), Accounting.TYPE_SUMMARY))
+            .orderBy(cb.desc(root.get("timestamp")), cb.desc(root.get("pk")));
+        List<Accounting> l = em.createQuery(cq).setMaxResults(1).getResultList();
+        return l.isEmpty() ? null : l.get(0);
+    }
+
+    @Override
+    public BigDecimal sumAmount(Long customerPk, Calendar after, Calendar until) {
+        EntityManager em = createEntityManager();
+        try {
+            return sumAmount(em, customerPk, after, until);
+        } finally {
+            em.close();
+        }
+    }
+
+    private BigDecimal sumAmount(EntityManager em, Long customerPk, Calendar after, Calendar until) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<BigDecimal> cq = cb.createQuery(BigDecimal.class);
+        Root<Accounting> root = cq.from(Accounting.class);
+
+        List<Predicate> where = new ArrayList<>();
+        where.add(cb.equal(root.get("customer").get("pk"), customerPk));
+        where.add(cb.notEqual(root.get("recordType"), Accounting.TYPE_SUMMARY));
+        if (after != null) {
+            where.add(cb.greaterThan(root.<Calendar>get("timestamp"), after));
+        }
+        if (until != null) {
+            where.add(cb.lessThanOrEqualTo(root.<Calendar>get("timestamp"), until));
+        }
+
+        cq.select(cb.sum(root.<BigDecimal>get("amount")))
+            .where(where.toArray(new Predicate[where.size()]));
+        BigDecimal sum = em.createQuery(cq).getSingleResult();
+        return sum == null ? BigDecimal.ZERO : sum;
+    }
+
+    @Override
+    public List<Long> findCustomersWithRecordsAfter(Calendar after) {
+        EntityManager em = createEntityManager();
+        try {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<Long> cq = cb.createQuery(Long.class);
+            Root<Accounting> root = cq.from(Accounting.class);
+
+            List<Predicate> where = new ArrayList<>();
+            where.add(cb.isNotNull(root.get("customer")));
+            where.add(cb.notEqual(root.get("recordType"), Accounting.TYPE_SUMMARY));
+            if (after != null) {
+                where.add(cb.greaterThan(root.<Calendar>get("timestamp"), after));
+            }
+
+            cq.select(root.get("customer").<Long>get("pk")).distinct(true)
+                .where(where.toArray(new Predicate[where.size()]));
+            return em.createQuery(cq).getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    @Override
+    public BigDecimal persistIfCovered(Accounting credit) {
+        Long customerPk = credit.getCustomer().getPk();
+        EntityManager em = createEntityManager();
+        em.getTransaction().begin();
+        try {
+            if (em.find(Customer.class, customerPk, LockModeType.PESSIMISTIC_WRITE) == null) {
+                throw new IllegalArgumentException("Customer " + customerPk + " does not exist");
+            }
+            Accounting last = getLastSummary(em, customerPk);
+            BigDecimal balance = sumAmount(em, customerPk, last == null ? null : last.getTimestamp(), null);
+            if (last != null) {
+                balance = balance.add(last.getAmount());
+            }
+            balance = balance.add(credit.getAmount());
+            if (balance.signum() < 0) {
+                em.getTransaction().commit();
+                return null;
+            }
+            em.persist(credit);
+            em.getTransaction().commit();
+            return balance;
+        } catch (final Exception ex) {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            throw ex;
+        } finally {
+            em.close();
+        }
+    }
+
+    @Override
+    public Accounting createSummary(Long customerPk, Calendar until) {
+        EntityManager em = createEntityManager();
+        em.getTransaction().begin();
+        try {
+            Accounting last = getLastSummary(em, customerPk);
+            if (last != null && !last.getTimestamp().before(until)) {
+                em.getTransaction().commit();
+                return null;
+            }
+
+            BigDecimal amount = sumAmount(em, customerPk, last == null ? null : last.getTimestamp(), until);
+            if (last != null) {
+                amount = amount.add(last.getAmount());
+            }
+
+            Accounting summary = new Accounting();
+            summary.setRecordType(Accounting.TYPE_SUMMARY);
+            summary.setCustomer(em.getReference(Customer.class, customerPk));
+            summary.setTimestamp(until);
+            summary.setAmount(amount);
+            em.persist(summary);
+            em.getTransaction().commit();
+            return summary;
+        } catch (final Exception ex) {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            throw ex;
+        } finally {
+            em.close();
+        }
     }
 
 }
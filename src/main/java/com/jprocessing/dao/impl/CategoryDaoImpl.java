@@ -37,9 +37,4 @@ public class CategoryDaoImpl extends JpaDaoImpl<Long, Category> implements Categ
         super(emf);
     }
 
-    @Override
-    public Category fetchRelated(Category entity) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
-    }
-
 }
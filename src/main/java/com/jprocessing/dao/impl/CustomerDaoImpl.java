@@ -21,47 +21,211 @@
  */
 package com.jprocessing.dao.impl;
 
+import com.jprocessing.cache.LruCache;
 import com.jprocessing.dao.CustomerDao;
+import com.jprocessing.dao.UnitOfWork;
 import com.jprocessing.entities.Customer;
 import com.jprocessing.entities.JpCustomer;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
 import javax.persistence.EntityManagerFactory;
 
 /**
+ * Customer entities returned by getOrCreate are cached in memory by billing id.
+ * Cached entities are detached and shared between callers, so they should not be
+ * modified outside of this DAO. Customers loaded inside {@link UnitOfWork} are managed
+ * by its persistence context and are not cached, customers written inside it are cached
+ * only after it is committed.
+ *
  * @see CustomerDao
  *
  * @author rumatoest
  */
 public class CustomerDaoImpl extends JpaDaoImpl<Long, Customer> implements CustomerDao {
 
+    public static final int DEFAULT_CACHE_SIZE = 10000;
+
+    public static final long DEFAULT_CACHE_TTL = TimeUnit.MINUTES.toMillis(10);
+
+    private final LruCache<Long, Customer> cache;
+
     @Inject
     public CustomerDaoImpl(EntityManagerFactory emf) {
+        this(emf, DEFAULT_CACHE_SIZE, DEFAULT_CACHE_TTL);
+    }
+
+    /**
+     * @param cacheSize Maximum number of cached customers
+     * @param cacheTtlMillis How long customer could be cached without database lookup
+     */
+    public CustomerDaoImpl(EntityManagerFactory emf, int cacheSize, long cacheTtlMillis) {
         super(emf);
+        this.cache = new LruCache<>(cacheSize, cacheTtlMillis);
+    }
+
+    /**
+     * Return customer cache (for statistics mostly).
+     */
+    public LruCache<Long, Customer> getCache() {
+        return cache;
     }
 
     @Override
     public Customer getOrCreate(JpCustomer jpc) {
-        Customer c = getByPk(jpc.getBillingId());
+        Long billingId = jpc.getBillingId();
+        Customer c = cache.get(billingId);
+        if (c != null && !isOutdated(c)) {
+            return c;
+        }
 
         if (c == null) {
-            c = new Customer(jpc);
-            persist(c);
-            return c;
+            c = getByPk(billingId);
+            if (c == null) {
+                c = new Customer(jpc);
+                persistOrMerge(c);
+                cacheWritten(c);
+                return c;
+            }
+            if (!isOutdated(c)) {
+                // Inside unit of work loaded customer is managed, it must not be shared with other threads
+                if (UnitOfWork.getEntityManager(getEmf()) == null) {
+                    cache.put(billingId, c);
+                }
+                return c;
+            }
         }
+
+        // Cached instance is shared between threads, so refreshed copy is written instead
+        Customer refreshed = new Customer(jpc);
+        merge(refreshed);
+        cacheWritten(refreshed);
+        return refreshed;
+    }
+
+    /**
+     * Check if customer data was not updated from billing for more than a month
+     */
+    private static boolean isOutdated(Customer c) {
         Calendar updateCheck = Calendar.getInstance();
         updateCheck.add(Calendar.MONTH, -1);
-        if (c.getUpdated().before(updateCheck)) {
-            c.refresh(jpc);
-            merge(c);
-        }
+        return c.getUpdated().before(updateCheck);
+    }
+
+    /**
+     * Cache customer written by this DAO after write is committed, inside {@link UnitOfWork}
+     * only when it is committed, so other threads never get not committed customer.
+     */
+    private void cacheWritten(final Customer c) {
+        UnitOfWork.afterCommit(getEmf(), new Runnable() {
+
+            @Override
+            public void run() {
+                cache.put(c.getPk(), c);
+            }
+        });
+    }
+
+    @Override
+    public void persistOrMerge(Customer entity) {
+        cache.invalidate(entity.getPk());
+        super.persistOrMerge(entity);
+        invalidateAfterCommit(Collections.singletonList(entity));
+    }
+
+    @Override
+    public void persistOrMergeAll(Collection<Customer> entities) {
+        invalidate(entities);
+        super.persistOrMergeAll(entities);
+        invalidateAfterCommit(entities);
+    }
+
+    @Override
+    public void merge(Customer entity) {
+        cache.invalidate(entity.getPk());
+        super.merge(entity);
+        invalidateAfterCommit(Collections.singletonList(entity));
+    }
+
+    @Override
+    public void mergeAll(Collection<Customer> entities) {
+        invalidate(entities);
+        super.mergeAll(entities);
+        invalidateAfterCommit(entities);
+    }
+
+    @Override
+    public void remove(Customer entity) {
+        cache.invalidate(entity.getPk());
+        super.remove(entity);
+        invalidateAfterCommit(Collections.singletonList(entity));
+    }
+
+    @Override
+    public void remove(Long pk) {
+        cache.invalidate(pk);
+        super.remove(pk);
+        invalidateKeysAfterCommit(Collections.singletonList(pk));
+    }
 
-        return c;
+    /**
+     * {@inheritDoc}
+     * Customer is removed from DAO cache too.
+     */
+    @Override
+    public void evictCache(Long pk) {
+        cache.invalidate(pk);
+        super.evictCache(pk);
     }
 
+    /**
+     * {@inheritDoc}
+     * DAO cache is cleared too.
+     */
     @Override
-    public Customer fetchRelated(Customer entity) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public void evictCache() {
+        cache.invalidateAll();
+        super.evictCache();
+    }
+
+    private void invalidate(Collection<Customer> entities) {
+        if (entities != null) {
+            for (Customer c : entities) {
+                cache.invalidate(c.getPk());
+            }
+        }
+    }
+
+    /**
+     * Drop written customers from cache again after write is committed, inside {@link UnitOfWork}
+     * only when it is committed. Customer loaded by other thread while write was in progress
+     * still holds old state and could be cached between invalidation before write and commit.
+     */
+    private void invalidateAfterCommit(Collection<Customer> entities) {
+        if (entities == null || entities.isEmpty()) {
+            return;
+        }
+        List<Long> pks = new ArrayList<>(entities.size());
+        for (Customer c : entities) {
+            pks.add(c.getPk());
+        }
+        invalidateKeysAfterCommit(pks);
+    }
+
+    private void invalidateKeysAfterCommit(final List<Long> pks) {
+        UnitOfWork.afterCommit(getEmf(), new Runnable() {
+
+            @Override
+            public void run() {
+                for (Long pk : pks) {
+                    cache.invalidate(pk);
+                }
+            }
+        });
     }
 
 }
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.dao.impl;
+
+import com.jprocessing.entities.JpEntity;
+import com.jprocessing.entities.PkAssignListener;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import javax.persistence.Column;
+import javax.persistence.EntityListeners;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToMany;
+import javax.persistence.OneToMany;
+import javax.persistence.OneToOne;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.persistence.Transient;
+
+/**
+ * Table mapping of entity class resolved from JPA annotations on fields.
+ * Used to write entities with native SQL statements bypassing persistence context.
+ * Only fields explicitly annotated with Id, Column or JoinColumn are mapped,
+ * inverse side associations (mappedBy) are skipped. Any other persistent field
+ * can not be written by native statement, so mapping fails for such entity.
+ *
+ * @author rumatoest
+ */
+final class EntityTableMapping {
+
+    private final String table;
+
+    private final List<String> columns;
+
+    private final Field[] fields;
+
+    private final boolean generatedPk;
+
+    private final boolean listenerAssignedPk;
+
+    private EntityTableMapping(String table, List<String> columns, List<Field> fields,
+        boolean generatedPk, boolean listenerAssignedPk) {
+        this.table = table;
+        this.columns = Collections.unmodifiableList(columns);
+        this.fields = fields.toArray(new Field[fields.size()]);
+        this.generatedPk = generatedPk;
+        this.listenerAssignedPk = listenerAssignedPk;
+    }
+
+    static EntityTableMapping of(Class<?> entityClass) {
+        Table t = entityClass.getAnnotation(Table.class);
+        String table = t == null || t.name().isEmpty() ? entityClass.getSimpleName() : t.name();
+
+        List<String> columns = new ArrayList<>();
+        List<Field> fields = new ArrayList<>();
+        boolean generatedPk = false;
+
+        for (Class<?> c = entityClass; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field f : c.getDeclaredFields()) {
+                if (Modifier.isStatic(f.getModifiers()) || Modifier.isTransient(f.getModifiers())
+                    || f.isAnnotationPresent(Transient.class)) {
+                    continue;
+                }
+                String name = null;
+                Column col = f.getAnnotation(Column.class);
+                JoinColumn jc = f.getAnnotation(JoinColumn.class);
+                if (col != null) {
+                    name = col.name().isEmpty() ? f.getName() : col.name();
+                } else if (jc != null) {
+                    name = jc.name().isEmpty() ? f.getName() + "_id" : jc.name();
+                } else if (f.isAnnotationPresent(Id.class)) {
+                    name = f.getName();
+                }
+                if (name == null) {
+                    if (isInverseAssociation(f)) {
+                        continue;
+                    }
+                    throw new IllegalArgumentException("Field " + f.getName() + " of " + entityClass
+                        + " has no Column or JoinColumn annotation and can not be written natively");
+                }
+                f.setAccessible(true);
+                if (f.isAnnotationPresent(Id.class)) {
+                    generatedPk = f.isAnnotationPresent(GeneratedValue.class);
+                    columns.add(0, name);
+                    fields.add(0, f);
+                } else {
+                    columns.add(name);
+                    fields.add(f);
+                }
+            }
+        }
+
+        if (fields.isEmpty() || !fields.get(0).isAnnotationPresent(Id.class)) {
+            throw new IllegalArgumentException("Can not find primary key field in " + entityClass);
+        }
+
+        boolean listenerAssignedPk = false;
+        EntityListeners el = entityClass.getAnnotation(EntityListeners.class);
+        if (el != null) {
+            listenerAssignedPk = Arrays.asList(el.value()).contains(PkAssignListener.class);
+        }
+
+        return new EntityTableMapping(table, columns, fields, generatedPk, listenerAssignedPk);
+    }
+
+    private static boolean isInverseAssociation(Field f) {
+        OneToMany otm = f.getAnnotation(OneToMany.class);
+        if (otm != null) {
+            return !otm.mappedBy().isEmpty();
+        }
+        ManyToMany mtm = f.getAnnotation(ManyToMany.class);
+        if (mtm != null) {
+            return !mtm.mappedBy().isEmpty();
+        }
+        OneToOne oto = f.getAnnotation(OneToOne.class);
+        return oto != null && !oto.mappedBy().isEmpty();
+    }
+
+    /**
+     * Return table name
+     */
+    String getTable() {
+        return table;
+    }
+
+    /**
+     * Return mapped column names, primary key column is the first one.
+     */
+    List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Return true if primary key value is generated by JPA provider.
+     */
+    boolean isGeneratedPk() {
+        return generatedPk;
+    }
+
+    /**
+     * Return true if primary key value is assigned by PkAssignListener.
+     */
+    boolean isListenerAssignedPk() {
+        return listenerAssignedPk;
+    }
+
+    /**
+     * Return JDBC compatible values for all mapped columns in same order as columns.
+     */
+    Object[] values(Object entity) {
+        Object[] values = new Object[fields.length];
+        try {
+            for (int i = 0; i < fields.length; i++) {
+                values[i] = toJdbc(fields[i], fields[i].get(entity));
+            }
+        } catch (IllegalAccessException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return values;
+    }
+
+    private static Object toJdbc(Field f, Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof JpEntity) {
+            return ((JpEntity<?>)value).getPk();
+        }
+        if (value instanceof Enum) {
+            Enumerated en = f.getAnnotation(Enumerated.class);
+            return en != null && en.value() == EnumType.STRING
+                ? ((Enum<?>)value).name() : ((Enum<?>)value).ordinal();
+        }
+        if (value instanceof Calendar || value instanceof Date) {
+            long ms = value instanceof Calendar
+                ? ((Calendar)value).getTimeInMillis() : ((Date)value).getTime();
+            Temporal tm = f.getAnnotation(Temporal.class);
+            TemporalType tt = tm == null ? TemporalType.TIMESTAMP : tm.value();
+            switch (tt) {
+                case DATE:
+                    return new java.sql.Date(ms);
+                case TIME:
+                    return new java.sql.Time(ms);
+                default:
+                    return new java.sql.Timestamp(ms);
+            }
+        }
+        return value;
+    }
+}
@@ -38,8 +38,8 @@ public class InvoiceDaoImpl extends JpaDaoImpl<Long, Invoice> implements Invoice
     }
 
     @Override
-    public Invoice fetchRelated(Invoice entity) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    protected String getFetchGraphName() {
+        return Invoice.GRAPH_ITEMS_PRODUCTS;
     }
 
 }
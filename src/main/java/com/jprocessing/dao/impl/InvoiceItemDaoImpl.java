@@ -23,8 +23,14 @@ package com.jprocessing.dao.impl;
 
 import com.jprocessing.dao.InvoiceItemDao;
 import com.jprocessing.entities.InvoiceItem;
+import java.util.List;
 import javax.inject.Inject;
+import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
 
 /**
  *
@@ -38,8 +44,21 @@ public class InvoiceItemDaoImpl extends JpaDaoImpl<Long, InvoiceItem> implements
     }
 
     @Override
-    public InvoiceItem fetchRelated(InvoiceItem entity) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public List<InvoiceItem> findByInvoice(Long invoicePk, String fetchGraph) {
+        EntityManager em = createEntityManager();
+        try {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<InvoiceItem> cq = cb.createQuery(InvoiceItem.class);
+            Root<InvoiceItem> root = cq.from(InvoiceItem.class);
+            cq.select(root)
+                .where(cb.equal(root.get("invoice").get(PK_ATTRIBUTE), invoicePk))
+                .orderBy(cb.asc(root.get(PK_ATTRIBUTE)));
+            TypedQuery<InvoiceItem> q = em.createQuery(cq);
+            applyFetchGraph(em, q, fetchGraph);
+            return q.getResultList();
+        } finally {
+            em.close();
+        }
     }
 
 }
@@ -22,20 +22,50 @@
 package com.jprocessing.dao.impl;
 
 import com.jprocessing.dao.JpaDao;
+import com.jprocessing.dao.Restriction;
+import com.jprocessing.dao.Slice;
+import com.jprocessing.dao.UnitOfWork;
 import com.jprocessing.entities.JpEntity;
+import com.jprocessing.entities.PkAssignListener;
 import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import javax.persistence.EntityExistsException;
+import javax.persistence.EntityGraph;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityNotFoundException;
+import javax.persistence.PersistenceUnitUtil;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaDelete;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.CriteriaUpdate;
 import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import javax.persistence.metamodel.Attribute;
 import org.apache.commons.lang3.tuple.Triple;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,6 +76,26 @@ import org.slf4j.LoggerFactory;
  */
 public abstract class JpaDaoImpl<PK extends Serializable, E extends JpEntity> implements JpaDao<PK, E> {
 
+    /**
+     * Name of primary key attribute in all entities
+     */
+    protected static final String PK_ATTRIBUTE = "pk";
+
+    /**
+     * JPA query hint to apply entity graph as load graph
+     */
+    protected static final String LOAD_GRAPH_HINT = "javax.persistence.loadgraph";
+
+    /**
+     * Hibernate query hint to set JDBC fetch size, ignored by other providers
+     */
+    protected static final String FETCH_SIZE_HINT = "org.hibernate.fetchSize";
+
+    /**
+     * Maximum number of primary keys in one IN restriction
+     */
+    private static final int FETCH_CHUNK_SIZE = 500;
+
     private final EntityManagerFactory emf;
 
     private static final Logger logger = LoggerFactory.getLogger(JpaDaoImpl.class);
@@ -57,6 +107,42 @@ public abstract class JpaDaoImpl<PK extends Serializable, E extends JpEntity> im
 
     Class<E> entityClass;
 
+    /**
+     * Number of entities to flush and clear from persistence context at once
+     * during batch operations.
+     */
+    private int batchSize = 50;
+
+    /**
+     * Number of entities to commit in one transaction during batch operations.
+     */
+    private int batchCommitSize = 1000;
+
+    /**
+     * Maximum number of entities bulk update or delete may match inside unit of work.
+     */
+    private int bulkLimitInUnitOfWork = 1000;
+
+    /**
+     * Native upsert strategy, if null then persistOrMerge will use JPA merge.
+     */
+    private UpsertDialect upsertDialect;
+
+    /**
+     * Lazy initialized native table mapping for entity class
+     */
+    private volatile EntityTableMapping tableMapping;
+
+    /**
+     * Lazy initialized native upsert statements by number of rows
+     */
+    private final ConcurrentMap<Integer, String> upsertSql = new ConcurrentHashMap<>();
+
+    /**
+     * Names of queries registered by createCachedQuery
+     */
+    private final Set<String> cachedQueries = ConcurrentHashMap.newKeySet();
+
     protected JpaDaoImpl(EntityManagerFactory emf) {
         this.emf = emf;
         this.entityClass = (Class<E>)((ParameterizedType)getClass().getGenericSuperclass()).getActualTypeArguments()[1];
@@ -89,9 +175,112 @@ public abstract class JpaDaoImpl<PK extends Serializable, E extends JpEntity> im
 
     /**
      * Will create entity manager based on current entity manager factory.
+     * Inside {@link UnitOfWork} entity manager of unit of work is returned,
+     * so DAO operations join its persistence context and transaction.
      */
     protected EntityManager createEntityManager() {
-        return getEmf().createEntityManager();
+        EntityManager em = UnitOfWork.getEntityManager(getEmf());
+        return em != null ? em : getEmf().createEntityManager();
+    }
+
+    /**
+     * Return number of entities flushed to database at once by batch operations.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Set number of entities flushed to database at once by batch operations.
+     * Should be equal to JDBC batch size of JPA provider
+     * (for example hibernate.jdbc.batch_size) to get real JDBC batching.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Return number of entities committed in one transaction by batch operations.
+     */
+    public int getBatchCommitSize() {
+        return batchCommitSize;
+    }
+
+    /**
+     * Set number of entities committed in one transaction by batch operations.
+     * Value will be rounded up to be multiple of batch size.
+     */
+    public void setBatchCommitSize(int batchCommitSize) {
+        if (batchCommitSize < 1) {
+            throw new IllegalArgumentException("Batch commit size must be positive: " + batchCommitSize);
+        }
+        this.batchCommitSize = batchCommitSize;
+    }
+
+    /**
+     * Return maximum number of entities bulk update or delete may match inside unit of work.
+     */
+    public int getBulkLimitInUnitOfWork() {
+        return bulkLimitInUnitOfWork;
+    }
+
+    /**
+     * Set maximum number of entities bulk update or delete may match inside unit of work.
+     * Inside unit of work primary keys of all matching entities are selected to synchronize
+     * persistence context with bulk statement, larger updates should run outside of unit of work.
+     */
+    public void setBulkLimitInUnitOfWork(int bulkLimitInUnitOfWork) {
+        if (bulkLimitInUnitOfWork < 1) {
+            throw new IllegalArgumentException("Bulk limit must be positive: " + bulkLimitInUnitOfWork);
+        }
+        this.bulkLimitInUnitOfWork = bulkLimitInUnitOfWork;
+    }
+
+    /**
+     * Return native upsert strategy or null if JPA merge is used.
+     */
+    public UpsertDialect getUpsertDialect() {
+        return upsertDialect;
+    }
+
+    /**
+     * Set native upsert strategy for persistOrMerge operations.
+     * Should match database behind entity manager factory.
+     * If null then persistOrMerge will use JPA merge (select + insert or update).
+     *
+     * @throws IllegalArgumentException If entity has fields that can not be written natively
+     */
+    public void setUpsertDialect(UpsertDialect upsertDialect) {
+        if (upsertDialect != null) {
+            getTableMapping();
+        }
+        this.upsertDialect = upsertDialect;
+        this.upsertSql.clear();
+    }
+
+    /**
+     * Return native table mapping for entity class.
+     */
+    EntityTableMapping getTableMapping() {
+        EntityTableMapping m = this.tableMapping;
+        if (m == null) {
+            m = EntityTableMapping.of(getEntityClass());
+            this.tableMapping = m;
+        }
+        return m;
+    }
+
+    private String getUpsertSql(UpsertDialect dialect, int rows) {
+        String sql = this.upsertSql.get(rows);
+        if (sql == null) {
+            EntityTableMapping m = getTableMapping();
+            sql = dialect.upsertSql(m.getTable(), m.getColumns(), rows);
+            this.upsertSql.put(rows, sql);
+        }
+        return sql;
     }
 
     /**
@@ -114,16 +303,122 @@ public abstract class JpaDaoImpl<PK extends Serializable, E extends JpEntity> im
             em.persist(entity);
             em.getTransaction().commit();
         } catch (final Exception ex) {
-            em.getTransaction().rollback();
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
             throw ex;
         } finally {
             em.close();
         }
     }
 
+    @Override
+    public void persistAll(Collection<E> entities) throws EntityExistsException {
+        writeAll(entities, WriteMode.PERSIST);
+    }
+
+    /**
+     * {@inheritDoc}
+     * If upsert dialect is set, then entity will be written by single native
+     * statement bypassing persistence context, otherwise JPA merge will be used
+     * (select + insert or update in one transaction).
+     * Entities with generated primary key that is not set yet are always persisted.
+     */
     @Override
     public void persistOrMerge(E entity) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        EntityManager em = createEntityManager();
+        List<Object> written = new ArrayList<>(1);
+        em.getTransaction().begin();
+        try {
+            upsert(em, entity, written);
+            em.getTransaction().commit();
+            evictCacheAfterCommit(written);
+        } catch (final Exception ex) {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            throw ex;
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * If upsert dialect is set, then every batchSize entities are written by
+     * one native statement with several rows.
+     */
+    @Override
+    public void persistOrMergeAll(Collection<E> entities) {
+        writeAll(entities, WriteMode.UPSERT);
+    }
+
+    /**
+     * Write single entity with native upsert statement or JPA merge.
+     *
+     * @param written Collects primary keys of entities written natively
+     */
+    private void upsert(EntityManager em, E entity, List<Object> written) {
+        UpsertDialect dialect = this.upsertDialect;
+        if (prepareUpsert(em, entity, dialect)) {
+            upsertNative(em, Collections.singletonList(entity), dialect, written);
+        }
+    }
+
+    /**
+     * Assign primary key if required and write entity with JPA
+     * if native upsert can not be used.
+     *
+     * @return True if entity must be written by native upsert statement
+     */
+    private boolean prepareUpsert(EntityManager em, E entity, UpsertDialect dialect) {
+        if (entity.getPk() == null) {
+            if (getTableMapping().isListenerAssignedPk()) {
+                PkAssignListener.assign(entity);
+            } else {
+                em.persist(entity);
+                return false;
+            }
+        }
+        if (dialect == null) {
+            em.merge(entity);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Write entities with different primary keys by one native upsert statement.
+     * Native statement bypasses persistence provider, so cached state of written entities
+     * becomes stale and has to be evicted by caller after commit.
+     *
+     * @param written Collects primary keys of written entities
+     */
+    private void upsertNative(EntityManager em, List<E> entities, UpsertDialect dialect, List<Object> written) {
+        EntityTableMapping m = getTableMapping();
+        Query q = em.createNativeQuery(getUpsertSql(dialect, entities.size()));
+        int p = 1;
+        for (E e : entities) {
+            for (Object v : m.values(e)) {
+                q.setParameter(p++, v);
+            }
+        }
+        q.executeUpdate();
+        for (E e : entities) {
+            written.add(e.getPk());
+        }
+    }
+
+    /**
+     * Write entities pending for native upsert and clear pending list
+     */
+    private void upsertPending(EntityManager em, List<E> pending, Set<Object> pendingPks, UpsertDialect dialect,
+        List<Object> written) {
+        if (!pending.isEmpty()) {
+            upsertNative(em, pending, dialect, written);
+            pending.clear();
+            pendingPks.clear();
+        }
     }
 
     @Override
@@ -134,7 +429,108 @@ public abstract class JpaDaoImpl<PK extends Serializable, E extends JpEntity> im
             em.merge(entity);
             em.getTransaction().commit();
         } catch (final Exception ex) {
-            em.getTransaction().rollback();
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            throw ex;
+        } finally {
+            em.close();
+        }
+    }
+
+    @Override
+    public void mergeAll(Collection<E> entities) {
+        writeAll(entities, WriteMode.MERGE);
+    }
+
+    /**
+     * Batch write operation type
+     */
+    private static enum WriteMode {
+
+        PERSIST, MERGE, UPSERT
+    }
+
+    /**
+     * Persist, merge or upsert entities using one entity manager.
+     * Persistence context is flushed and cleared every batchSize entities
+     * and transaction is committed every batchCommitSize entities.
+     */
+    private void writeAll(Collection<E> entities, WriteMode mode) {
+        if (entities == null || entities.isEmpty()) {
+            return;
+        }
+        final int flushEvery = this.batchSize;
+        final int commitEvery = ((this.batchCommitSize + flushEvery - 1) / flushEvery) * flushEvery;
+
+        EntityManager em = createEntityManager();
+        // Persistence context of unit of work holds caller entities, so it is never cleared
+        final boolean joined = UnitOfWork.getEntityManager(getEmf()) == em;
+        List<E> persisted = joined && mode == WriteMode.PERSIST ? new ArrayList<E>(flushEvery) : null;
+        final UpsertDialect dialect = this.upsertDialect;
+        List<E> pending = mode == WriteMode.UPSERT ? new ArrayList<E>(flushEvery) : null;
+        Set<Object> pendingPks = pending != null ? new HashSet<Object>() : null;
+        List<Object> written = pending != null ? new ArrayList<Object>() : null;
+        em.getTransaction().begin();
+        try {
+            int count = 0;
+            for (E e : entities) {
+                switch (mode) {
+                    case PERSIST:
+                        if (persisted != null && !em.contains(e)) {
+                            persisted.add(e);
+                        }
+                        em.persist(e);
+                        break;
+                    case MERGE:
+                        em.merge(e);
+                        break;
+                    default:
+                        if (prepareUpsert(em, e, dialect)) {
+                            // Rows of one statement must have different keys
+                            if (pendingPks.contains(e.getPk())) {
+                                upsertPending(em, pending, pendingPks, dialect, written);
+                            }
+                            pending.add(e);
+                            pendingPks.add(e.getPk());
+                        }
+                }
+                count++;
+                if (count % flushEvery == 0) {
+                    if (pending != null) {
+                        upsertPending(em, pending, pendingPks, dialect, written);
+                    }
+                    em.flush();
+                    if (!joined) {
+                        em.clear();
+                    } else if (persisted != null) {
+                        // Only entities made managed by this call are detached
+                        for (E p : persisted) {
+                            em.detach(p);
+                        }
+                        persisted.clear();
+                    }
+                }
+                if (count % commitEvery == 0) {
+                    em.getTransaction().commit();
+                    if (written != null) {
+                        evictCacheAfterCommit(written);
+                        written.clear();
+                    }
+                    em.getTransaction().begin();
+                }
+            }
+            if (pending != null) {
+                upsertPending(em, pending, pendingPks, dialect, written);
+            }
+            em.getTransaction().commit();
+            if (written != null) {
+                evictCacheAfterCommit(written);
+            }
+        } catch (final Exception ex) {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
             throw ex;
         } finally {
             em.close();
@@ -161,7 +557,9 @@ public abstract class JpaDaoImpl<PK extends Serializable, E extends JpEntity> im
             em.remove(entity);
             em.getTransaction().commit();
         } catch (Exception ex) {
-            em.getTransaction().rollback();
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
             throw ex;
         } finally {
             em.close();
@@ -179,13 +577,159 @@ public abstract class JpaDaoImpl<PK extends Serializable, E extends JpEntity> im
             }
             em.getTransaction().commit();
         } catch (Exception ex) {
-            em.getTransaction().rollback();
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
             throw ex;
         } finally {
             em.close();
         }
     }
 
+    @Override
+    public int updateWhere(Map<String, ?> values, Restriction<E> restriction) {
+        if (values.isEmpty()) {
+            throw new IllegalArgumentException("No attributes to update");
+        }
+        if (restriction == null) {
+            throw new IllegalArgumentException("Restriction is required, use Restriction.none() to update all");
+        }
+        EntityManager em = createEntityManager();
+        em.getTransaction().begin();
+        try {
+            List<E> managed = findManaged(em, restriction);
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaUpdate<E> u = cb.createCriteriaUpdate(getEntityClass());
+            Root<E> root = u.from(getEntityClass());
+            for (Map.Entry<String, ?> v : values.entrySet()) {
+                u.set(v.getKey(), v.getValue());
+            }
+            u.where(restriction.build(cb, root));
+            int updated = em.createQuery(u).executeUpdate();
+            for (E e : managed) {
+                em.refresh(e);
+            }
+            em.getTransaction().commit();
+            if (updated > 0) {
+                evictCacheAfterCommit();
+            }
+            return updated;
+        } catch (final Exception ex) {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            throw ex;
+        } finally {
+            em.close();
+        }
+    }
+
+    @Override
+    public int deleteWhere(Restriction<E> restriction) {
+        if (restriction == null) {
+            throw new IllegalArgumentException("Restriction is required, use Restriction.none() to delete all");
+        }
+        EntityManager em = createEntityManager();
+        em.getTransaction().begin();
+        try {
+            List<E> managed = findManaged(em, restriction);
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaDelete<E> d = cb.createCriteriaDelete(getEntityClass());
+            Root<E> root = d.from(getEntityClass());
+            d.where(restriction.build(cb, root));
+            int deleted = em.createQuery(d).executeUpdate();
+            for (E e : managed) {
+                em.detach(e);
+            }
+            em.getTransaction().commit();
+            if (deleted > 0) {
+                evictCacheAfterCommit();
+            }
+            return deleted;
+        } catch (final Exception ex) {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            throw ex;
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Find entities matching restriction that are already loaded into persistence context
+     * of unit of work, so bulk statement can refresh or detach them.
+     * Pending changes are flushed before bulk statement.
+     * JPA can not enumerate persistence context, so primary keys of matching entities
+     * are selected, at most {@link #getBulkLimitInUnitOfWork()} of them.
+     *
+     * @return Empty list outside of unit of work
+     * @throws IllegalStateException If more entities match restriction than allowed inside unit of work
+     */
+    private List<E> findManaged(EntityManager em, Restriction<E> restriction) {
+        if (UnitOfWork.getEntityManager(getEmf()) != em) {
+            return Collections.emptyList();
+        }
+        em.flush();
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Serializable> q = cb.createQuery(Serializable.class);
+        Root<E> root = q.from(getEntityClass());
+        q.select(root.<Serializable>get(PK_ATTRIBUTE)).where(restriction.build(cb, root));
+        final int limit = this.bulkLimitInUnitOfWork;
+        List<Serializable> pks = em.createQuery(q).setMaxResults(limit + 1).getResultList();
+        if (pks.size() > limit) {
+            throw new IllegalStateException("Bulk statement inside unit of work matches more than " + limit
+                + " entities of " + getEntityClass().getSimpleName() + ", run it outside of unit of work");
+        }
+        PersistenceUnitUtil util = getEmf().getPersistenceUnitUtil();
+        List<E> managed = new ArrayList<>();
+        for (Serializable pk : pks) {
+            // Reference of not loaded entity is an empty proxy, it is dropped right away
+            E e = em.getReference(getEntityClass(), pk);
+            if (util.isLoaded(e)) {
+                managed.add(e);
+            } else {
+                em.detach(e);
+            }
+        }
+        return managed;
+    }
+
+    /**
+     * Evict entities written by native statements from shared cache.
+     * Must be called after DAO transaction commit, inside unit of work entities are evicted
+     * only when it is committed, so concurrent readers can not cache rows that are not committed yet.
+     */
+    @SuppressWarnings("unchecked")
+    private void evictCacheAfterCommit(List<Object> pks) {
+        if (pks.isEmpty()) {
+            return;
+        }
+        final List<Object> evicted = new ArrayList<>(pks);
+        UnitOfWork.afterCommit(getEmf(), new Runnable() {
+
+            @Override
+            public void run() {
+                for (Object pk : evicted) {
+                    evictCache((PK)pk);
+                }
+            }
+        });
+    }
+
+    /**
+     * Evict shared cache after bulk statement, inside unit of work only when it is committed
+     */
+    private void evictCacheAfterCommit() {
+        UnitOfWork.afterCommit(getEmf(), new Runnable() {
+
+            @Override
+            public void run() {
+                evictCache();
+            }
+        });
+    }
+
     @Override
     public E getByPk(PK pk) {
         EntityManager em = createEntityManager();
@@ -196,6 +740,165 @@ public abstract class JpaDaoImpl<PK extends Serializable, E extends JpEntity> im
         }
     }
 
+    @Override
+    public void evictCache(PK pk) {
+        getEmf().getCache().evict(getEntityClass(), pk);
+    }
+
+    @Override
+    public void evictCache() {
+        getEmf().getCache().evict(getEntityClass());
+    }
+
+    /**
+     * Return name of named entity graph used by fetchRelated.
+     * By default null, which means all direct associations of entity.
+     */
+    protected String getFetchGraphName() {
+        return null;
+    }
+
+    /**
+     * Return entity graph used by fetchRelated
+     */
+    protected EntityGraph<?> getFetchGraph(EntityManager em) {
+        String name = getFetchGraphName();
+        if (name != null) {
+            return em.getEntityGraph(name);
+        }
+        EntityGraph<E> graph = em.createEntityGraph(getEntityClass());
+        for (Attribute<? super E, ?> a : em.getMetamodel().entity(getEntityClass()).getAttributes()) {
+            if (a.isAssociation()) {
+                graph.addAttributeNodes(a.getName());
+            }
+        }
+        return graph;
+    }
+
+    @Override
+    public E fetchRelated(E entity) {
+        if (entity == null || entity.getPk() == null) {
+            return entity;
+        }
+        List<E> l = fetchRelated(Collections.singletonList(entity));
+        return l.isEmpty() ? null : l.get(0);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<E> fetchRelated(Collection<E> entities) {
+        List<PK> pks = new ArrayList<>(entities.size());
+        for (E e : entities) {
+            if (e.getPk() != null) {
+                pks.add((PK)e.getPk());
+            }
+        }
+        EntityManager em = createEntityManager();
+        try {
+            return findByPks(em, pks, getFetchGraph(em));
+        } finally {
+            em.close();
+        }
+    }
+
+    @Override
+    public E getByPk(PK pk, String fetchGraph) {
+        if (fetchGraph == null) {
+            return getByPk(pk);
+        }
+        EntityManager em = createEntityManager();
+        try {
+            Map<String, Object> hints = new HashMap<>();
+            hints.put(LOAD_GRAPH_HINT, em.getEntityGraph(fetchGraph));
+            return em.find(getEntityClass(), pk, hints);
+        } finally {
+            em.close();
+        }
+    }
+
+    @Override
+    public List<E> findByPks(Collection<PK> pks, String fetchGraph) {
+        EntityManager em = createEntityManager();
+        try {
+            return findByPks(em, pks, fetchGraph == null ? null : em.getEntityGraph(fetchGraph));
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Load entities by primary keys in keys order with optional load graph
+     */
+    protected List<E> findByPks(EntityManager em, Collection<PK> pks, EntityGraph<?> graph) {
+        if (pks.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<PK> keys = new ArrayList<>(pks);
+        Map<Object, E> loaded = new HashMap<>(keys.size() * 2);
+        for (int from = 0; from < keys.size(); from += FETCH_CHUNK_SIZE) {
+            List<PK> chunk = keys.subList(from, Math.min(keys.size(), from + FETCH_CHUNK_SIZE));
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<E> cq = cb.createQuery(getEntityClass());
+            Root<E> root = cq.from(getEntityClass());
+            cq.select(root).distinct(true).where(root.get(PK_ATTRIBUTE).in(chunk));
+            TypedQuery<E> q = em.createQuery(cq);
+            if (graph != null) {
+                q.setHint(LOAD_GRAPH_HINT, graph);
+            }
+            for (E e : q.getResultList()) {
+                loaded.put(e.getPk(), e);
+            }
+        }
+
+        List<E> result = new ArrayList<>(loaded.size());
+        for (PK pk : keys) {
+            E e = loaded.get(pk);
+            if (e != null) {
+                result.add(e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Apply named entity graph to query as load graph, null graph name is ignored
+     */
+    protected void applyFetchGraph(EntityManager em, TypedQuery<?> query, String fetchGraph) {
+        if (fetchGraph != null) {
+            query.setHint(LOAD_GRAPH_HINT, em.getEntityGraph(fetchGraph));
+        }
+    }
+
+    /**
+     * Return query built once per DAO and registered as named query in entity manager factory.
+     * First call builds criteria query, next calls create named query without criteria
+     * tree construction and JPQL rendering. Builder must use parameter expressions
+     * instead of literal values, parameters are bound to returned query by caller.
+     *
+     * @param name Query name unique inside DAO class
+     */
+    protected <R> TypedQuery<R> createCachedQuery(EntityManager em, String name, Class<R> resultClass,
+        QueryBuilder<R> builder) {
+        String queryName = getClass().getSimpleName() + "." + name;
+        if (cachedQueries.contains(queryName)) {
+            return em.createNamedQuery(queryName, resultClass);
+        }
+        TypedQuery<R> q = em.createQuery(builder.build(em.getCriteriaBuilder()));
+        getEmf().addNamedQuery(queryName, q);
+        cachedQueries.add(queryName);
+        return q;
+    }
+
+    /**
+     * Builds parameterized criteria query for {@link #createCachedQuery}
+     *
+     * @param <R> Query result type
+     */
+    protected interface QueryBuilder<R> {
+
+        CriteriaQuery<R> build(CriteriaBuilder cb);
+    }
+
     /**
      *
      * @param em Entity manager for query - Will be closed after method execution.
@@ -204,7 +907,7 @@ public abstract class JpaDaoImpl<PK extends Serializable, E extends JpEntity> im
     protected E getByRestriction(EntityManager em,
         Triple<CriteriaBuilder, CriteriaQuery<E>, Root<E>> queryTriple, Predicate... restrictions) {
         queryTriple.getMiddle()
-            .select(queryTriple.getMiddle().from(getEntityClass()))
+            .select(queryTriple.getRight())
             .where(restrictions);
         Query q = em.createQuery(queryTriple.getMiddle());
         return (E)q.getSingleResult();
@@ -232,7 +935,7 @@ public abstract class JpaDaoImpl<PK extends Serializable, E extends JpEntity> im
     protected List<E> findByRestriction(EntityManager em, Integer offsetStart, Integer fetchSize,
         Triple<CriteriaBuilder, CriteriaQuery<E>, Root<E>> queryTriple, Predicate... restrictions) {
         queryTriple.getMiddle()
-            .select(queryTriple.getMiddle().from(getEntityClass()))
+            .select(queryTriple.getRight())
             .where(restrictions);
         Query q = em.createQuery(queryTriple.getMiddle());
         if (fetchSize != null) {
@@ -258,6 +961,265 @@ public abstract class JpaDaoImpl<PK extends Serializable, E extends JpEntity> im
         }
     }
 
+    @Override
+    public Stream<E> streamByRestriction(Restriction<E> restriction, int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("Fetch size must be positive: " + fetchSize);
+        }
+        EntityManager em = createEntityManager();
+        return StreamSupport.stream(new KeysetSpliterator(em, restriction, fetchSize), false)
+            .onClose(em::close);
+    }
+
+    @Override
+    public void forEachByRestriction(Restriction<E> restriction, int fetchSize, Consumer<? super E> consumer) {
+        try (Stream<E> s = streamByRestriction(restriction, fetchSize)) {
+            s.forEach(consumer);
+        }
+    }
+
+    @Override
+    public <R> List<R> findProjected(Class<R> resultClass, Restriction<E> restriction, String... attributes) {
+        return findProjected(resultClass, restriction, 0, attributes);
+    }
+
+    @Override
+    public <R> List<R> findProjected(Class<R> resultClass, Restriction<E> restriction, int maxResults,
+        String... attributes) {
+        if (attributes.length == 0) {
+            throw new IllegalArgumentException("No attributes to select");
+        }
+        EntityManager em = createEntityManager();
+        try {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<R> cq = cb.createQuery(resultClass);
+            Root<E> root = cq.from(getEntityClass());
+            Selection<?>[] selections = new Selection<?>[attributes.length];
+            for (int i = 0; i < attributes.length; i++) {
+                selections[i] = attributePath(root, attributes[i]);
+            }
+            cq.select(cb.construct(resultClass, selections));
+            if (restriction != null) {
+                cq.where(restriction.build(cb, root));
+            }
+            cq.orderBy(cb.asc(root.get(PK_ATTRIBUTE)));
+            TypedQuery<R> q = em.createQuery(cq);
+            if (maxResults > 0) {
+                q.setMaxResults(maxResults);
+            }
+            return q.getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Resolve attribute path like "product.sku" from entity root
+     */
+    private static Path<?> attributePath(Root<?> root, String attribute) {
+        Path<?> path = root;
+        for (String name : attribute.split("\\.")) {
+            path = path.get(name);
+        }
+        return path;
+    }
+
+    @Override
+    public Slice<E> findSlice(Restriction<E> restriction, int size, String continuationToken) {
+        return findSlice(restriction, null, false, size, continuationToken);
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Slice<E> findSlice(Restriction<E> restriction, String sortAttribute, boolean descending,
+        int size, String continuationToken) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Page size must be positive: " + size);
+        }
+        String attribute = sortAttribute == null ? PK_ATTRIBUTE : sortAttribute;
+
+        EntityManager em = createEntityManager();
+        try {
+            // Continuation token can not hold null, and null values are not ordered by keyset predicate
+            if (!PK_ATTRIBUTE.equals(attribute)
+                && em.getMetamodel().entity(getEntityClass()).getSingularAttribute(attribute).isOptional()) {
+                throw new IllegalArgumentException("Sort attribute " + attribute + " of "
+                    + getEntityClass().getSimpleName() + " is nullable");
+            }
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<E> cq = cb.createQuery(getEntityClass());
+            Root<E> root = cq.from(getEntityClass());
+            Path<Comparable> pkPath = root.get(PK_ATTRIBUTE);
+            Path<Comparable> sortPath = root.get(attribute);
+
+            List<Predicate> where = new ArrayList<>();
+            if (restriction != null) {
+                Collections.addAll(where, restriction.build(cb, root));
+            }
+            if (continuationToken != null) {
+                KeysetToken token = KeysetToken.decode(continuationToken);
+                if (!attribute.equals(token.attribute) || descending != token.descending) {
+                    throw new IllegalArgumentException("Continuation token was issued for other sort order");
+                }
+                Comparable lastPk = (Comparable)KeysetToken.decodeValue(token.pk, pkPath.getJavaType());
+                Predicate afterPk = descending ? cb.lessThan(pkPath, lastPk) : cb.greaterThan(pkPath, lastPk);
+                if (PK_ATTRIBUTE.equals(attribute)) {
+                    where.add(afterPk);
+                } else {
+                    Comparable last = (Comparable)KeysetToken.decodeValue(token.value, sortPath.getJavaType());
+                    where.add(cb.or(
+                        descending ? cb.lessThan(sortPath, last) : cb.greaterThan(sortPath, last),
+                        cb.and(cb.equal(sortPath, last), afterPk)));
+                }
+            }
+
+            cq.select(root).where(where.toArray(new Predicate[where.size()]));
+            if (PK_ATTRIBUTE.equals(attribute)) {
+                cq.orderBy(descending ? cb.desc(pkPath) : cb.asc(pkPath));
+            } else {
+                cq.orderBy(descending ? cb.desc(sortPath) : cb.asc(sortPath),
+                    descending ? cb.desc(pkPath) : cb.asc(pkPath));
+            }
+
+            TypedQuery<E> q = em.createQuery(cq);
+            q.setMaxResults(size + 1);
+            List<E> list = q.getResultList();
+
+            String next = null;
+            if (list.size() > size) {
+                list = new ArrayList<>(list.subList(0, size));
+                E last = list.get(size - 1);
+                Object lastValue = PK_ATTRIBUTE.equals(attribute) ? null : readAttribute(em, last, attribute);
+                next = new KeysetToken(attribute, descending, last.getPk(), lastValue).encode();
+            }
+            return new Slice<>(list, next);
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Read entity attribute value using JPA metamodel
+     */
+    private Object readAttribute(EntityManager em, E entity, String attribute) {
+        Member m = em.getMetamodel().entity(getEntityClass()).getAttribute(attribute).getJavaMember();
+        try {
+            if (m instanceof Field) {
+                Field f = (Field)m;
+                f.setAccessible(true);
+                return f.get(entity);
+            }
+            Method mt = (Method)m;
+            mt.setAccessible(true);
+            return mt.invoke(entity);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Can not read attribute " + attribute + " of " + entity, ex);
+        }
+    }
+
+    /**
+     * Load next chunk of entities ordered by primary key.
+     *
+     * @param restriction Query restriction or null
+     * @param afterPk Load entities with primary key greater than provided, null to load first chunk
+     * @param size Maximum number of entities to load, also used as JDBC fetch size
+     */
+    protected List<E> findChunkAfter(EntityManager em, Restriction<E> restriction, PK afterPk, int size) {
+        return findChunkAfter(em, restriction, afterPk, size, null);
+    }
+
+    /**
+     * Same as {@link #findChunkAfter(EntityManager, Restriction, Object, int)}
+     * with associations from named entity graph.
+     *
+     * @param fetchGraph Name of entity graph, null to use entity mapping defaults
+     */
+    protected List<E> findChunkAfter(EntityManager em, Restriction<E> restriction, PK afterPk, int size,
+        String fetchGraph) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<E> cq = cb.createQuery(getEntityClass());
+        Root<E> root = cq.from(getEntityClass());
+
+        List<Predicate> where = new ArrayList<>();
+        if (restriction != null) {
+            Collections.addAll(where, restriction.build(cb, root));
+        }
+        if (afterPk != null) {
+            where.add(pkGreaterThan(cb, root, afterPk));
+        }
+
+        cq.select(root)
+            .where(where.toArray(new Predicate[where.size()]))
+            .orderBy(cb.asc(root.get(PK_ATTRIBUTE)));
+        TypedQuery<E> q = em.createQuery(cq);
+        applyFetchGraph(em, q, fetchGraph);
+        q.setMaxResults(size);
+        q.setHint(FETCH_SIZE_HINT, size);
+        return q.getResultList();
+    }
+
+    /**
+     * Return primary key greater than provided value restriction.
+     * Primary keys are ordered by database, so any primary key type is treated as comparable.
+     */
+    @SuppressWarnings("unchecked")
+    private static <K extends Comparable<? super K>> Predicate pkGreaterThan(CriteriaBuilder cb, Root<?> root,
+        Object pk) {
+        return cb.greaterThan(root.<K>get(PK_ATTRIBUTE), (K)pk);
+    }
+
+    /**
+     * Iterates over entities loading them by chunks with keyset pagination.
+     * Persistence context is cleared before each chunk is loaded.
+     */
+    private class KeysetSpliterator extends Spliterators.AbstractSpliterator<E> {
+
+        private final EntityManager em;
+
+        private final Restriction<E> restriction;
+
+        private final int fetchSize;
+
+        private Iterator<E> chunk = Collections.emptyIterator();
+
+        private PK lastPk;
+
+        private boolean lastChunk = false;
+
+        KeysetSpliterator(EntityManager em, Restriction<E> restriction, int fetchSize) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT);
+            this.em = em;
+            this.restriction = restriction;
+            this.fetchSize = fetchSize;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super E> action) {
+            if (!chunk.hasNext()) {
+                if (lastChunk) {
+                    return false;
+                }
+                if (UnitOfWork.getEntityManager(getEmf()) == em) {
+                    // Unit of work context holds caller entities, only pending changes are written
+                    em.flush();
+                } else {
+                    em.clear();
+                }
+                List<E> next = findChunkAfter(em, restriction, lastPk, fetchSize);
+                lastChunk = next.size() < fetchSize;
+                if (next.isEmpty()) {
+                    return false;
+                }
+                chunk = next.iterator();
+            }
+            E e = chunk.next();
+            lastPk = (PK)e.getPk();
+            action.accept(e);
+            return true;
+        }
+    }
+
     /**
      * Count all entities records.
      *
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.dao.impl;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * Continuation token of keyset pagination.
+ * Holds sort attribute, sort direction and values of sort attribute
+ * and primary key of the last entity on previous page.
+ *
+ * @author rumatoest
+ */
+final class KeysetToken {
+
+    private static final String VERSION = "k1";
+
+    private static final String SEPARATOR = "|";
+
+    final String attribute;
+
+    final boolean descending;
+
+    final String pk;
+
+    final String value;
+
+    KeysetToken(String attribute, boolean descending, Object pk, Object value) {
+        this.attribute = attribute;
+        this.descending = descending;
+        this.pk = encodeValue(pk);
+        this.value = value == null ? null : encodeValue(value);
+    }
+
+    private KeysetToken(String attribute, boolean descending, String pk, String value) {
+        this.attribute = attribute;
+        this.descending = descending;
+        this.pk = pk;
+        this.value = value;
+    }
+
+    /**
+     * Return opaque URL safe token string
+     */
+    String encode() {
+        StringBuilder sb = new StringBuilder(VERSION).append(SEPARATOR)
+            .append(attribute).append(SEPARATOR)
+            .append(descending ? "d" : "a").append(SEPARATOR)
+            .append(pk);
+        if (value != null) {
+            sb.append(SEPARATOR).append(value);
+        }
+        return Base64.getUrlEncoder().withoutPadding()
+            .encodeToString(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parse token string
+     *
+     * @throws IllegalArgumentException If token is malformed
+     */
+    static KeysetToken decode(String token) {
+        String s;
+        try {
+            s = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Malformed continuation token", ex);
+        }
+        String[] parts = s.split("\\|", 5);
+        if (parts.length < 4 || !VERSION.equals(parts[0])) {
+            throw new IllegalArgumentException("Malformed continuation token");
+        }
+        return new KeysetToken(parts[1], "d".equals(parts[2]), parts[3], parts.length > 4 ? parts[4] : null);
+    }
+
+    static String encodeValue(Object v) {
+        if (v instanceof Calendar) {
+            return String.valueOf(((Calendar)v).getTimeInMillis());
+        }
+        if (v instanceof Date) {
+            return String.valueOf(((Date)v).getTime());
+        }
+        if (v instanceof Enum) {
+            return ((Enum<?>)v).name();
+        }
+        return String.valueOf(v);
+    }
+
+    /**
+     * Convert encoded value back to attribute java type
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static Object decodeValue(String s, Class<?> type) {
+        if (type == Long.class || type == long.class) {
+            return Long.valueOf(s);
+        } else if (type == Integer.class || type == int.class) {
+            return Integer.valueOf(s);
+        } else if (type == Short.class || type == short.class) {
+            return Short.valueOf(s);
+        } else if (type == Double.class || type == double.class) {
+            return Double.valueOf(s);
+        } else if (type == Boolean.class || type == boolean.class) {
+            return Boolean.valueOf(s);
+        } else if (type == BigDecimal.class) {
+            return new BigDecimal(s);
+        } else if (type == BigInteger.class) {
+            return new BigInteger(s);
+        } else if (type == String.class) {
+            return s;
+        } else if (Calendar.class.isAssignableFrom(type)) {
+            Calendar c = Calendar.getInstance();
+            c.setTimeInMillis(Long.parseLong(s));
+            return c;
+        } else if (Date.class.isAssignableFrom(type)) {
+            return new Date(Long.parseLong(s));
+        } else if (type.isEnum()) {
+            return Enum.valueOf((Class<Enum>)type, s);
+        }
+        throw new IllegalArgumentException("Unsupported keyset attribute type " + type);
+    }
+}
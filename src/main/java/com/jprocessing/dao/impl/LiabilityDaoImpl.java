@@ -23,8 +23,18 @@ package com.jprocessing.dao.impl;
 
 import com.jprocessing.dao.LiabilityDao;
 import com.jprocessing.entities.Liability;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
 import javax.inject.Inject;
+import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
 
 /**
  *
@@ -38,8 +48,41 @@ public class LiabilityDaoImpl extends JpaDaoImpl<Long, Liability> implements Lia
     }
 
     @Override
-    public Liability fetchRelated(Liability entity) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public List<Liability> findExpiring(Calendar after, Calendar until, Liability last, int limit) {
+        return findExpiring(after, until, last, limit, null);
+    }
+
+    @Override
+    public List<Liability> findExpiring(Calendar after, Calendar until, Liability last, int limit,
+        String fetchGraph) {
+        EntityManager em = createEntityManager();
+        try {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<Liability> cq = cb.createQuery(Liability.class);
+            Root<Liability> root = cq.from(Liability.class);
+            Path<Calendar> expireTime = root.get("expireTime");
+            Path<Long> pk = root.get(PK_ATTRIBUTE);
+
+            List<Predicate> where = new ArrayList<>();
+            where.add(cb.greaterThan(expireTime, after));
+            where.add(cb.lessThanOrEqualTo(expireTime, until));
+            if (last != null) {
+                where.add(cb.or(
+                    cb.greaterThan(expireTime, last.getExpireTime()),
+                    cb.and(cb.equal(expireTime, last.getExpireTime()), cb.greaterThan(pk, last.getPk()))));
+            }
+
+            cq.select(root)
+                .where(where.toArray(new Predicate[where.size()]))
+                .orderBy(cb.asc(expireTime), cb.asc(pk));
+            TypedQuery<Liability> q = em.createQuery(cq);
+            applyFetchGraph(em, q, fetchGraph);
+            q.setMaxResults(limit);
+            q.setHint(FETCH_SIZE_HINT, limit);
+            return q.getResultList();
+        } finally {
+            em.close();
+        }
     }
 
 }
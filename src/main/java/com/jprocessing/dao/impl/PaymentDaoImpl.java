@@ -22,9 +22,26 @@
 package com.jprocessing.dao.impl;
 
 import com.jprocessing.dao.PaymentDao;
+import com.jprocessing.dao.PaymentSummary;
+import com.jprocessing.dao.Restriction;
+import com.jprocessing.dao.UnitOfWork;
 import com.jprocessing.entities.Payment;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import javax.inject.Inject;
+import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.Query;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
 
 /**
  *
@@ -38,8 +55,181 @@ public class PaymentDaoImpl extends JpaDaoImpl<Long, Payment> implements Payment
     }
 
     @Override
-    public Payment fetchRelated(Payment entity) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    protected String getFetchGraphName() {
+        return Payment.GRAPH_ACCOUNTING_INVOICE;
+    }
+
+    @Override
+    public Payment getByTransactionId(String transactionId) {
+        EntityManager em = createEntityManager();
+        try {
+            List<Payment> l = createCachedQuery(em, "getByTransactionId", Payment.class, new QueryBuilder<Payment>() {
+
+                @Override
+                public CriteriaQuery<Payment> build(CriteriaBuilder cb) {
+                    CriteriaQuery<Payment> cq = cb.createQuery(Payment.class);
+                    Root<Payment> root = cq.from(Payment.class);
+                    return cq.select(root)
+                        .where(cb.equal(root.get("transactionId"), cb.parameter(String.class, "transactionId")));
+                }
+            }).setParameter("transactionId", transactionId).getResultList();
+            return l.isEmpty() ? null : l.get(0);
+        } finally {
+            em.close();
+        }
+    }
+
+    @Override
+    public List<Payment> findByTransactionIds(Collection<String> transactionIds) {
+        if (transactionIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        EntityManager em = createEntityManager();
+        try {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<Payment> cq = cb.createQuery(Payment.class);
+            Root<Payment> root = cq.from(Payment.class);
+            cq.select(root).where(root.<String>get("transactionId").in(transactionIds));
+            return em.createQuery(cq).getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    @Override
+    public Set<Long> updateStatus(Collection<Payment> payments, Map<Long, Payment.STATUS> expected) {
+        if (payments.isEmpty()) {
+            return Collections.emptySet();
+        }
+        EntityManager em = createEntityManager();
+        em.getTransaction().begin();
+        try {
+            // Bulk statement flushes persistence context, managed payments would be written unconditionally
+            for (Payment p : payments) {
+                if (em.contains(p)) {
+                    em.detach(p);
+                }
+            }
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaUpdate<Payment> u = cb.createCriteriaUpdate(Payment.class);
+            Root<Payment> r = u.from(Payment.class);
+            u.set(r.<Payment.STATUS>get("status"), cb.parameter(Payment.STATUS.class, "status"))
+                .set(r.<Calendar>get("endTime"), cb.parameter(Calendar.class, "endTime"))
+                .where(cb.equal(r.get(PK_ATTRIBUTE), cb.parameter(Long.class, "pk")),
+                    cb.equal(r.get("status"), cb.parameter(Payment.STATUS.class, "expected")));
+            Query q = em.createQuery(u);
+
+            Set<Long> changed = new HashSet<>();
+            for (Payment p : payments) {
+                q.setParameter("status", p.getStatus())
+                    .setParameter("endTime", p.getEndTime())
+                    .setParameter("pk", p.getPk())
+                    .setParameter("expected", expected.get(p.getPk()));
+                if (q.executeUpdate() == 0) {
+                    changed.add(p.getPk());
+                }
+            }
+            em.getTransaction().commit();
+            return changed;
+        } catch (final Exception ex) {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            throw ex;
+        } finally {
+            em.close();
+        }
+    }
+
+    @Override
+    public int timeoutPending(Calendar startedBefore, Calendar endTime, int limit) {
+        EntityManager em = createEntityManager();
+        em.getTransaction().begin();
+        try {
+            CriteriaBuilder cb = em.getCriteriaBuilder();
+            CriteriaQuery<Long> q = cb.createQuery(Long.class);
+            Root<Payment> r = q.from(Payment.class);
+            q.select(r.<Long>get(PK_ATTRIBUTE))
+                .where(cb.equal(r.get("status"), Payment.STATUS.PENDING),
+                    cb.lessThan(r.<Calendar>get("startTime"), startedBefore))
+                .orderBy(cb.asc(r.get("startTime")));
+            List<Long> pks = em.createQuery(q).setMaxResults(limit).getResultList();
+
+            int updated = 0;
+            if (!pks.isEmpty()) {
+                CriteriaUpdate<Payment> u = cb.createCriteriaUpdate(Payment.class);
+                Root<Payment> ur = u.from(Payment.class);
+                u.set(ur.<Payment.STATUS>get("status"), Payment.STATUS.TIMEOUT)
+                    .set(ur.<Calendar>get("endTime"), endTime)
+                    .where(ur.get(PK_ATTRIBUTE).in(pks),
+                        cb.equal(ur.get("status"), Payment.STATUS.PENDING));
+                updated = em.createQuery(u).executeUpdate();
+            }
+            em.getTransaction().commit();
+            return updated;
+        } catch (final Exception ex) {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            throw ex;
+        } finally {
+            em.close();
+        }
+    }
+
+    @Override
+    public int migrateProperties(int batchSize) {
+        if (UnitOfWork.getEntityManager(getEmf()) != null) {
+            // Chunks are committed and cleared one by one, that would detach entities of unit of work
+            throw new IllegalStateException("Properties migration can not run inside unit of work");
+        }
+        int migrated = 0;
+        Long lastPk = null;
+        EntityManager em = createEntityManager();
+        try {
+            List<Payment> chunk;
+            do {
+                em.getTransaction().begin();
+                // "properties" is HQL keyword, so all payments are scanned
+                chunk = findChunkAfter(em, null, lastPk, batchSize);
+                for (Payment p : chunk) {
+                    if (p.migrateProperties()) {
+                        migrated++;
+                    }
+                    lastPk = p.getPk();
+                }
+                em.getTransaction().commit();
+                em.clear();
+            } while (chunk.size() == batchSize);
+            return migrated;
+        } catch (final Exception ex) {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            throw ex;
+        } finally {
+            em.close();
+        }
+    }
+
+    @Override
+    public int purge(final Payment.STATUS status, final Calendar startedBefore) {
+        return deleteWhere(new Restriction<Payment>() {
+
+            @Override
+            public Predicate[] build(CriteriaBuilder cb, Root<Payment> root) {
+                return new Predicate[]{
+                    cb.equal(root.get("status"), status),
+                    cb.lessThan(root.<Calendar>get("startTime"), startedBefore)
+                };
+            }
+        });
+    }
+
+    @Override
+    public List<PaymentSummary> findSummaries(Restriction<Payment> restriction, int maxResults) {
+        return findProjected(PaymentSummary.class, restriction, maxResults,
+            "pk", "transactionId", "status", "amount", "currency", "startTime");
     }
 
 }
@@ -23,6 +23,7 @@ package com.jprocessing.dao.impl;
 
 import com.jprocessing.dao.ProductDao;
 import com.jprocessing.entities.Product;
+import java.util.List;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.persistence.EntityManager;
@@ -43,15 +44,40 @@ public class ProductDaoImpl extends JpaDaoImpl<Long, Product> implements Product
         super(emf);
     }
 
+    @Override
     public Product getBySku(String sku) {
-        EntityManager em = getEmf().createEntityManager();
-        CriteriaTriple<CriteriaBuilder, CriteriaQuery<Product>, Root<Product>> ct = initCriteriaQuery(em);
-        return getByRestrictionAndCloseEm(em, ct, ct.getBuilder().equal(ct.getRoot().get("sku"), sku));
+        EntityManager em = createEntityManager();
+        try {
+            return createCachedQuery(em, "getBySku", Product.class, new QueryBuilder<Product>() {
+
+                @Override
+                public CriteriaQuery<Product> build(CriteriaBuilder cb) {
+                    CriteriaQuery<Product> cq = cb.createQuery(Product.class);
+                    Root<Product> root = cq.from(Product.class);
+                    return cq.select(root).where(cb.equal(root.get("sku"), cb.parameter(String.class, "sku")));
+                }
+            }).setParameter("sku", sku).getSingleResult();
+        } finally {
+            em.close();
+        }
     }
 
     @Override
-    public Product fetchRelated(Product entity) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public List<Product> findNotDeleted() {
+        EntityManager em = createEntityManager();
+        try {
+            return createCachedQuery(em, "findNotDeleted", Product.class, new QueryBuilder<Product>() {
+
+                @Override
+                public CriteriaQuery<Product> build(CriteriaBuilder cb) {
+                    CriteriaQuery<Product> cq = cb.createQuery(Product.class);
+                    Root<Product> root = cq.from(Product.class);
+                    return cq.select(root).where(cb.isFalse(root.<Boolean>get("deleted")));
+                }
+            }).getResultList();
+        } finally {
+            em.close();
+        }
     }
 
 }
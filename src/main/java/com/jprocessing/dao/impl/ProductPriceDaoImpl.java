@@ -22,9 +22,16 @@
 package com.jprocessing.dao.impl;
 
 import com.jprocessing.dao.ProductPriceDao;
+import com.jprocessing.entities.Product;
 import com.jprocessing.entities.ProductPrice;
+import java.util.List;
 import javax.inject.Inject;
+import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.Root;
 
 /**
  *
@@ -38,8 +45,23 @@ public class ProductPriceDaoImpl extends JpaDaoImpl<Long, ProductPrice> implemen
     }
 
     @Override
-    public ProductPrice fetchRelated(ProductPrice entity) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public List<ProductPrice> findForNotDeletedProducts() {
+        EntityManager em = createEntityManager();
+        try {
+            return createCachedQuery(em, "findForNotDeletedProducts", ProductPrice.class,
+                new QueryBuilder<ProductPrice>() {
+
+                    @Override
+                    public CriteriaQuery<ProductPrice> build(CriteriaBuilder cb) {
+                        CriteriaQuery<ProductPrice> cq = cb.createQuery(ProductPrice.class);
+                        Root<ProductPrice> root = cq.from(ProductPrice.class);
+                        Join<ProductPrice, Product> product = (Join<ProductPrice, Product>)root.<ProductPrice, Product>fetch("product");
+                        return cq.select(root).where(cb.isFalse(product.<Boolean>get("deleted")));
+                    }
+                }).getResultList();
+        } finally {
+            em.close();
+        }
     }
 
 }
@@ -22,9 +22,25 @@
 package com.jprocessing.dao.impl;
 
 import com.jprocessing.dao.SubscriptionDao;
+import com.jprocessing.dao.UnitOfWork;
+import com.jprocessing.entities.JpEntity;
 import com.jprocessing.entities.Subscription;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 import javax.inject.Inject;
+import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
 
 /**
  *
@@ -38,8 +54,161 @@ public class SubscriptionDaoImpl extends JpaDaoImpl<Long, Subscription> implemen
     }
 
     @Override
-    public Subscription fetchRelated(Subscription entity) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public int renewDue(Calendar until, int partitions, int partition, int chunkSize,
+        Function<Subscription, List<? extends JpEntity<Long>>> renewer,
+        BiConsumer<Subscription, RuntimeException> failed) {
+        if (partition < 0 || partition >= partitions) {
+            throw new IllegalArgumentException("Partition " + partition + " is out of 0.." + (partitions - 1));
+        }
+        int renewed = 0;
+        Calendar lastTime = null;
+        Long lastPk = null;
+        // Renewed subscriptions that are still due would be met again further in billing time order
+        Set<Long> dueAgain = new HashSet<>();
+        EntityManager em = createEntityManager();
+        boolean joined = UnitOfWork.getEntityManager(getEmf()) == em;
+        try {
+            List<Subscription> chunk;
+            do {
+                em.getTransaction().begin();
+                chunk = findDueChunk(em, until, partitions, partition, lastTime, lastPk, chunkSize);
+                List<Long> changed = new ArrayList<>(chunk.size());
+                for (Subscription s : chunk) {
+                    // Renewer moves billing time, so key is copied before renewal
+                    lastTime = (Calendar)s.getNextBillingTime().clone();
+                    lastPk = s.getPk();
+                    if (dueAgain.remove(s.getPk())) {
+                        continue;
+                    }
+                    if (renew(em, s, renewer, failed)) {
+                        changed.add(s.getPk());
+                        if (!s.getNextBillingTime().after(until)) {
+                            dueAgain.add(s.getPk());
+                        }
+                    }
+                }
+                try {
+                    em.getTransaction().commit();
+                    renewed += changed.size();
+                } catch (RuntimeException ex) {
+                    if (joined) {
+                        throw ex;
+                    }
+                    if (em.getTransaction().isActive()) {
+                        em.getTransaction().rollback();
+                    }
+                    em.clear();
+                    getLogger().warn("Failed to renew " + changed.size()
+                        + " subscriptions in one transaction, renewing them one by one", ex);
+                    for (Long pk : changed) {
+                        renewed += renewOne(em, pk, renewer, failed);
+                    }
+                }
+                if (!joined) {
+                    em.clear();
+                }
+            } while (chunk.size() == chunkSize);
+            return renewed;
+        } catch (final Exception ex) {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            throw ex;
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Persist entities created by renewer for subscription.
+     * If renewer fails subscription changes are dropped and it is reported as failed.
+     *
+     * @return True if subscription was renewed
+     */
+    private boolean renew(EntityManager em, Subscription s,
+        Function<Subscription, List<? extends JpEntity<Long>>> renewer,
+        BiConsumer<Subscription, RuntimeException> failed) {
+        List<? extends JpEntity<Long>> created = null;
+        try {
+            created = renewer.apply(s);
+            if (created == null || created.isEmpty()) {
+                return false;
+            }
+            for (JpEntity<Long> e : created) {
+                em.persist(e);
+            }
+            return true;
+        } catch (RuntimeException ex) {
+            em.detach(s);
+            if (created != null) {
+                for (JpEntity<Long> e : created) {
+                    em.detach(e);
+                }
+            }
+            failed.accept(s, ex);
+            return false;
+        }
+    }
+
+    /**
+     * Renew single subscription in its own transaction
+     *
+     * @return 1 if subscription was renewed, 0 otherwise
+     */
+    private int renewOne(EntityManager em, Long pk,
+        Function<Subscription, List<? extends JpEntity<Long>>> renewer,
+        BiConsumer<Subscription, RuntimeException> failed) {
+        em.getTransaction().begin();
+        Subscription s = em.find(Subscription.class, pk);
+        boolean ok = false;
+        try {
+            ok = s != null && renew(em, s, renewer, failed);
+            em.getTransaction().commit();
+            return ok ? 1 : 0;
+        } catch (RuntimeException ex) {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            if (ok) {
+                failed.accept(s, ex);
+            }
+            return 0;
+        } finally {
+            em.clear();
+        }
+    }
+
+    /**
+     * Load next chunk of due subscriptions in (next billing time, primary key) order,
+     * so scan follows next billing time index.
+     *
+     * @param afterTime Next billing time of last subscription of previous chunk, null for first chunk
+     * @param afterPk Primary key of last subscription of previous chunk, null for first chunk
+     */
+    private List<Subscription> findDueChunk(EntityManager em, Calendar until,
+        int partitions, int partition, Calendar afterTime, Long afterPk, int size) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Subscription> cq = cb.createQuery(Subscription.class);
+        Root<Subscription> root = cq.from(Subscription.class);
+        root.fetch("product", JoinType.INNER);
+
+        List<Predicate> where = new ArrayList<>();
+        where.add(cb.isTrue(root.<Boolean>get("active")));
+        where.add(cb.lessThanOrEqualTo(root.<Calendar>get("nextBillingTime"), until));
+        if (partitions > 1) {
+            where.add(cb.equal(cb.mod(root.get("customer").<Integer>get(PK_ATTRIBUTE), partitions), partition));
+        }
+        if (afterPk != null) {
+            Path<Calendar> time = root.get("nextBillingTime");
+            where.add(cb.or(
+                cb.greaterThan(time, afterTime),
+                cb.and(cb.equal(time, afterTime), cb.greaterThan(root.<Long>get(PK_ATTRIBUTE), afterPk))));
+        }
+
+        cq.select(root)
+            .where(where.toArray(new Predicate[where.size()]))
+            .orderBy(cb.asc(root.get("nextBillingTime")), cb.asc(root.get(PK_ATTRIBUTE)));
+        return em.createQuery(cq).setMaxResults(size).setHint(FETCH_SIZE_HINT, size).getResultList();
     }
 
 }
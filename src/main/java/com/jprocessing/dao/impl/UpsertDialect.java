@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.dao.impl;
+
+import java.util.List;
+
+/**
+ * Native SQL strategies for single statement insert-or-update (upsert).
+ * Generated statements use JPA positional parameters (?1, ?2, ...) in the same order
+ * as provided columns, primary key column must be the first one.
+ * Statement may write several rows at once, then parameters of rows follow each other
+ * and rows must have different primary keys.
+ *
+ * @author rumatoest
+ */
+public enum UpsertDialect {
+
+    /**
+     * PostgreSQL 9.5+ INSERT ... ON CONFLICT DO UPDATE
+     */
+    POSTGRESQL {
+        @Override
+        public String upsertSql(String table, List<String> columns, int rows) {
+            StringBuilder sb = insertInto(table, columns, rows);
+            sb.append(" ON CONFLICT (").append(columns.get(0)).append(")");
+            if (columns.size() == 1) {
+                return sb.append(" DO NOTHING").toString();
+            }
+            sb.append(" DO UPDATE SET ");
+            for (int i = 1; i < columns.size(); i++) {
+                if (i > 1) {
+                    sb.append(", ");
+                }
+                sb.append(columns.get(i)).append(" = EXCLUDED.").append(columns.get(i));
+            }
+            return sb.toString();
+        }
+    },
+    /**
+     * MySQL/MariaDB INSERT ... ON DUPLICATE KEY UPDATE
+     */
+    MYSQL {
+        @Override
+        public String upsertSql(String table, List<String> columns, int rows) {
+            StringBuilder sb = insertInto(table, columns, rows);
+            sb.append(" ON DUPLICATE KEY UPDATE ");
+            if (columns.size() == 1) {
+                return sb.append(columns.get(0)).append(" = ").append(columns.get(0)).toString();
+            }
+            for (int i = 1; i < columns.size(); i++) {
+                if (i > 1) {
+                    sb.append(", ");
+                }
+                sb.append(columns.get(i)).append(" = VALUES(").append(columns.get(i)).append(")");
+            }
+            return sb.toString();
+        }
+    },
+    /**
+     * H2 MERGE INTO ... KEY(...)
+     */
+    H2 {
+        @Override
+        public String upsertSql(String table, List<String> columns, int rows) {
+            StringBuilder sb = new StringBuilder("MERGE INTO ").append(table).append(" (");
+            appendColumns(sb, columns, "");
+            sb.append(") KEY (").append(columns.get(0)).append(") VALUES ");
+            appendRows(sb, columns.size(), rows);
+            return sb.toString();
+        }
+    },
+    /**
+     * SQL:2003 MERGE statement (HSQLDB, SQL Server, DB2)
+     */
+    ANSI_MERGE {
+        @Override
+        public String upsertSql(String table, List<String> columns, int rows) {
+            StringBuilder sb = new StringBuilder("MERGE INTO ").append(table)
+                .append(" t USING (VALUES ");
+            appendRows(sb, columns.size(), rows);
+            sb.append(") AS s (");
+            appendColumns(sb, columns, "");
+            sb.append(") ON (t.").append(columns.get(0)).append(" = s.").append(columns.get(0)).append(")");
+            if (columns.size() > 1) {
+                sb.append(" WHEN MATCHED THEN UPDATE SET ");
+                for (int i = 1; i < columns.size(); i++) {
+                    if (i > 1) {
+                        sb.append(", ");
+                    }
+                    sb.append("t.").append(columns.get(i)).append(" = s.").append(columns.get(i));
+                }
+            }
+            sb.append(" WHEN NOT MATCHED THEN INSERT (");
+            appendColumns(sb, columns, "");
+            sb.append(") VALUES (");
+            appendColumns(sb, columns, "s.");
+            return sb.append(")").toString();
+        }
+    };
+
+    /**
+     * Generate upsert statement for one row.
+     *
+     * @param table Table name
+     * @param columns All columns to write, primary key column must be first
+     */
+    public String upsertSql(String table, List<String> columns) {
+        return upsertSql(table, columns, 1);
+    }
+
+    /**
+     * Generate upsert statement for several rows.
+     *
+     * @param table Table name
+     * @param columns All columns to write, primary key column must be first
+     * @param rows Number of rows written by statement
+     */
+    public abstract String upsertSql(String table, List<String> columns, int rows);
+
+    static StringBuilder insertInto(String table, List<String> columns, int rows) {
+        StringBuilder sb = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        appendColumns(sb, columns, "");
+        sb.append(") VALUES ");
+        appendRows(sb, columns.size(), rows);
+        return sb;
+    }
+
+    static void appendColumns(StringBuilder sb, List<String> columns, String prefix) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(prefix).append(columns.get(i));
+        }
+    }
+
+    static void appendRows(StringBuilder sb, int columns, int rows) {
+        if (rows < 1) {
+            throw new IllegalArgumentException("Rows number must be positive: " + rows);
+        }
+        for (int r = 0; r < rows; r++) {
+            if (r > 0) {
+                sb.append(", ");
+            }
+            sb.append("(");
+            for (int i = 1; i <= columns; i++) {
+                if (i > 1) {
+                    sb.append(", ");
+                }
+                sb.append("?").append(r * columns + i);
+            }
+            sb.append(")");
+        }
+    }
+}
@@ -25,9 +25,13 @@ import java.math.BigDecimal;
 import java.util.Calendar;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
 import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
@@ -39,10 +43,18 @@ import javax.persistence.TemporalType;
  * system (TYPE_DEBIT). Customer use his balance to pay for product or service (TYPE_CREDIT).
  * Each credit record also creates liability related to product.
  *
+ * Customer balance is the amount of the latest summary record plus all debit and credit
+ * records with timestamp after the summary timestamp.
+ *
  * @author rumatoest
  */
 @Entity
-@Table(name = "jp_accounting")
+@Table(name = "jp_accounting",
+    indexes = {
+        @Index(columnList = "customer_id,timestamp"),
+        @Index(columnList = "customer_id,record_type,timestamp")
+    }
+)
 public class Accounting implements JpEntity<Long> {
 
     private static final long serialVersionUID = -5184193346979102514L;
@@ -65,8 +77,12 @@ public class Accounting implements JpEntity<Long> {
      */
     public static final int TYPE_CREDIT = -1;
 
+    /**
+     * Primary keys are allocated by blocks from database sequence.
+     * ACCOUNTING_PK_SEQ must be created with INCREMENT BY equal to allocationSize.
+     */
     @Id
-    @SequenceGenerator(name = "accountingPkSeq", sequenceName = "ACCOUNTING_PK_SEQ", allocationSize = 1, initialValue = 1)
+    @SequenceGenerator(name = "accountingPkSeq", sequenceName = "ACCOUNTING_PK_SEQ", allocationSize = 50, initialValue = 1)
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "accountingPkSeq")
     @Column(name = "id")
     private Long pk;
@@ -98,6 +114,24 @@ public class Accounting implements JpEntity<Long> {
         this.recordType = recordType;
     }
 
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "customer_id", nullable = true)
+    private Customer customer;
+
+    /**
+     * Return customer whose account this record belongs to
+     */
+    public Customer getCustomer() {
+        return customer;
+    }
+
+    /**
+     * Set customer whose account this record belongs to
+     */
+    public void setCustomer(Customer customer) {
+        this.customer = customer;
+    }
+
     @Temporal(TemporalType.TIMESTAMP)
     @Column(name = "timestamp", nullable = false)
     private Calendar timestamp;
@@ -112,12 +146,13 @@ public class Accounting implements JpEntity<Long> {
     /**
      * Set record creation timestamp.
      * Do not change timestamp manually.
+     * For summary records this is the time up to which records were summed.
      */
     public void setTimestamp(Calendar timestamp) {
         this.timestamp = timestamp;
     }
 
-    @Column(name = "amount", precision = 2, nullable = false)
+    @Column(name = "amount", precision = 19, scale = 4, nullable = false)
     private BigDecimal amount;
 
     /**
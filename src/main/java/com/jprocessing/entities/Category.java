@@ -21,8 +21,10 @@
  */
 package com.jprocessing.entities;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.Id;
 import javax.persistence.Table;
 
@@ -31,6 +33,8 @@ import javax.persistence.Table;
  * @author rumatoest
  */
 @Entity
+@Cacheable
+@EntityListeners(PkAssignListener.class)
 @Table(name = "jp_categories")
 public class Category implements JpEntity<Long> {
 
@@ -22,6 +22,7 @@
 package com.jprocessing.entities;
 
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.Id;
 import javax.persistence.Table;
 
@@ -30,6 +31,7 @@ import javax.persistence.Table;
  * @author rumatoest
  */
 @Entity
+@EntityListeners(PkAssignListener.class)
 @Table(name = "jp_credit_cards")
 public class CreditCard implements JpEntity<Long> {
 
@@ -22,6 +22,7 @@
 package com.jprocessing.entities;
 
 import java.util.Calendar;
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
@@ -38,6 +39,7 @@ import javax.persistence.TemporalType;
  * @author rumatoest
  */
 @Entity
+@Cacheable
 @Table(name = "jp_customer")
 public class Customer implements JpEntity<Long> {
 
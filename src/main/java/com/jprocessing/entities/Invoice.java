@@ -27,10 +27,15 @@ import java.util.Set;
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.FetchType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.NamedAttributeNode;
+import javax.persistence.NamedEntityGraph;
+import javax.persistence.NamedSubgraph;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
@@ -41,11 +46,25 @@ import javax.persistence.TemporalType;
  * @author rumatoest
  */
 @Entity
-@Table(name = "jp_invoices")
+@EntityListeners(PkAssignListener.class)
+@NamedEntityGraph(name = Invoice.GRAPH_ITEMS_PRODUCTS,
+    attributeNodes = {
+        @NamedAttributeNode("customer"),
+        @NamedAttributeNode(value = "items", subgraph = "items")},
+    subgraphs = {
+        @NamedSubgraph(name = "items", attributeNodes = {@NamedAttributeNode("product")})})
+@Table(name = "jp_invoices",
+    indexes = {
+        @Index(columnList = "customer_id")})
 public class Invoice implements JpEntity<Long> {
 
     private static final long serialVersionUID = 5452682433225339426L;
 
+    /**
+     * Entity graph of invoice with customer, items and items products
+     */
+    public static final String GRAPH_ITEMS_PRODUCTS = "Invoice.itemsWithProducts";
+
     @Id
     @Column(name = "id")
     private Long pk;
@@ -60,6 +79,24 @@ public class Invoice implements JpEntity<Long> {
         this.pk = primaryKey;
     }
 
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "customer_id", nullable = true)
+    private Customer customer;
+
+    /**
+     * Return customer this invoice is issued to
+     */
+    public Customer getCustomer() {
+        return customer;
+    }
+
+    /**
+     * Set customer this invoice is issued to
+     */
+    public void setCustomer(Customer customer) {
+        this.customer = customer;
+    }
+
     @Temporal(TemporalType.TIMESTAMP)
     @Column(name = "create_time", nullable = false)
     private Calendar createTime;
@@ -155,9 +192,9 @@ public class Invoice implements JpEntity<Long> {
      * Will update total invoice price from total prices in attached invoice items.
      */
     public void updateTotal() {
-        BigDecimal t = new BigDecimal(0);
+        BigDecimal t = BigDecimal.ZERO;
         for (InvoiceItem i : getItems()) {
-            t.add(i.calculateTotalPrice());
+            t = t.add(i.calculateTotalPrice());
         }
         setTotal(t);
     }
@@ -24,10 +24,15 @@ package com.jprocessing.entities;
 import java.math.BigDecimal;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.FetchType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.NamedAttributeNode;
+import javax.persistence.NamedEntityGraph;
+import javax.persistence.NamedEntityGraphs;
 import javax.persistence.Table;
 
 /**
@@ -37,11 +42,31 @@ import javax.persistence.Table;
  * @author rumatoest
  */
 @Entity
-@Table(name = "jp_invoice_items")
+@EntityListeners(PkAssignListener.class)
+@NamedEntityGraphs({
+    @NamedEntityGraph(name = InvoiceItem.GRAPH_PRODUCT,
+        attributeNodes = {@NamedAttributeNode("product")}),
+    @NamedEntityGraph(name = InvoiceItem.GRAPH_INVOICE_PRODUCT,
+        attributeNodes = {
+            @NamedAttributeNode("invoice"),
+            @NamedAttributeNode("product")})})
+@Table(name = "jp_invoice_items",
+    indexes = {
+        @Index(columnList = "invoice_id")})
 public class InvoiceItem implements JpEntity<Long> {
 
     private static final long serialVersionUID = -4696947672576523844L;
 
+    /**
+     * Entity graph of invoice item with product
+     */
+    public static final String GRAPH_PRODUCT = "InvoiceItem.product";
+
+    /**
+     * Entity graph of invoice item with invoice and product
+     */
+    public static final String GRAPH_INVOICE_PRODUCT = "InvoiceItem.invoiceAndProduct";
+
     @Id
     @Column(name = "id")
     private Long pk;
@@ -56,7 +81,7 @@ public class InvoiceItem implements JpEntity<Long> {
         this.pk = primaryKey;
     }
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "invoice_id", nullable = false)
     private Invoice invoice;
 
@@ -74,7 +99,7 @@ public class InvoiceItem implements JpEntity<Long> {
         this.invoice = invoice;
     }
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "product_id", nullable = false)
     private Product product;
 
@@ -94,7 +119,7 @@ public class InvoiceItem implements JpEntity<Long> {
 
     }
 
-    @Column(name = "product_price", precision = 2, nullable = false)
+    @Column(name = "product_price", precision = 19, scale = 4, nullable = false)
     public BigDecimal productPrice;
 
     /**
@@ -130,7 +155,7 @@ public class InvoiceItem implements JpEntity<Long> {
         this.currency = currency;
     }
 
-    @Column(name = "quantity", precision = 4, nullable = false)
+    @Column(name = "quantity", precision = 19, scale = 4, nullable = false)
     public BigDecimal quantity;
 
     /**
@@ -161,8 +186,6 @@ public class InvoiceItem implements JpEntity<Long> {
      * Return value with precision = 2
      */
     public BigDecimal calculateTotalPrice() {
-        BigDecimal total = getProductPrice().multiply(getQuantity());
-        total.setScale(2, BigDecimal.ROUND_HALF_UP);
-        return total;
+        return getProductPrice().multiply(getQuantity()).setScale(2, BigDecimal.ROUND_HALF_UP);
     }
 }
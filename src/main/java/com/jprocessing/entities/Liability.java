@@ -25,10 +25,14 @@ import java.math.BigDecimal;
 import java.util.Calendar;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.FetchType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.NamedAttributeNode;
+import javax.persistence.NamedEntityGraph;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
@@ -48,11 +52,22 @@ import javax.persistence.TemporalType;
  * @author rumatoest
  */
 @Entity
-@Table(name = "jp_liabilities")
+@EntityListeners(PkAssignListener.class)
+@NamedEntityGraph(name = Liability.GRAPH_PRODUCT,
+    attributeNodes = {@NamedAttributeNode("product")})
+@Table(name = "jp_liabilities",
+    indexes = {
+        @Index(columnList = "customer_id"),
+        @Index(columnList = "expire_time")})
 public class Liability implements JpEntity<Long> {
 
     private static final long serialVersionUID = 5771313956504071187L;
 
+    /**
+     * Entity graph of liability with product
+     */
+    public static final String GRAPH_PRODUCT = "Liability.product";
+
     @Id
     @Column(name = "id")
     private Long pk;
@@ -67,6 +82,24 @@ public class Liability implements JpEntity<Long> {
         this.pk = primaryKey;
     }
 
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "customer_id", nullable = true)
+    private Customer customer;
+
+    /**
+     * Return customer this liability belongs to
+     */
+    public Customer getCustomer() {
+        return customer;
+    }
+
+    /**
+     * Set customer this liability belongs to
+     */
+    public void setCustomer(Customer customer) {
+        this.customer = customer;
+    }
+
     @Temporal(TemporalType.TIMESTAMP)
     @Column(name = "create_time", nullable = false)
     private Calendar createTime;
@@ -130,7 +163,7 @@ public class Liability implements JpEntity<Long> {
         this.accountig = accountig;
     }
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "product_id", nullable = false)
     private Product product;
 
@@ -149,7 +182,7 @@ public class Liability implements JpEntity<Long> {
         this.product = product;
     }
 
-    @Column(name = "product_price", precision = 2, nullable = false)
+    @Column(name = "product_price", precision = 19, scale = 4, nullable = false)
     public BigDecimal productPrice;
 
     /**
@@ -187,7 +220,7 @@ public class Liability implements JpEntity<Long> {
         this.currency = currency;
     }
 
-    @Column(name = "quantity", precision = 4, nullable = false)
+    @Column(name = "quantity", precision = 19, scale = 4, nullable = false)
     public BigDecimal quantity;
 
     /**
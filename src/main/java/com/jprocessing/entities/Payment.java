@@ -21,14 +21,13 @@
  */
 package com.jprocessing.entities;
 
-import java.io.IOException;
-import java.io.StringReader;
-import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.util.Calendar;
+import java.util.Map;
 import java.util.Properties;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
 import javax.persistence.FetchType;
@@ -37,11 +36,12 @@ import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.Lob;
 import javax.persistence.ManyToOne;
+import javax.persistence.NamedAttributeNode;
+import javax.persistence.NamedEntityGraph;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 import javax.persistence.Transient;
-import org.slf4j.LoggerFactory;
 
 /**
  * Each payment holds info about adding funds (money/refund) to customers account.
@@ -53,10 +53,15 @@ import org.slf4j.LoggerFactory;
  * @author rumatoest
  */
 @Entity
+@EntityListeners(PkAssignListener.class)
+@NamedEntityGraph(name = Payment.GRAPH_ACCOUNTING_INVOICE,
+    attributeNodes = {
+        @NamedAttributeNode("accountig"),
+        @NamedAttributeNode("invoice")})
 @Table(name = "jp_payments",
     indexes = {
         @Index(columnList = "transaction_id"),
-        @Index(columnList = "status"),
+        @Index(columnList = "status,start_time"),
         @Index(columnList = "accounting_id")
     }
 )
@@ -64,6 +69,11 @@ public class Payment implements JpEntity<Long> {
 
     private static final long serialVersionUID = 6491268568658870088L;
 
+    /**
+     * Entity graph of payment with accounting record and invoice
+     */
+    public static final String GRAPH_ACCOUNTING_INVOICE = "Payment.accountingAndInvoice";
+
     /**
      * Hold transaction status codes.
      */
@@ -94,7 +104,36 @@ public class Payment implements JpEntity<Long> {
         /**
          * Fraud payment was detected
          */
-        FRAUD
+        FRAUD;
+
+        /**
+         * Return true if payment system will not change this status anymore.
+         */
+        public boolean isFinal() {
+            return this != PENDING;
+        }
+
+        /**
+         * Return true if payment may change status from this one to target.
+         * Pending payment may get any other status, completed payment may be refunded
+         * or marked as fraud, timed out payment may still be completed or failed
+         * by late callback. Error, refund and fraud are terminal.
+         */
+        public boolean canTransitTo(STATUS target) {
+            if (target == null || target == this) {
+                return false;
+            }
+            switch (this) {
+                case PENDING:
+                    return true;
+                case COMPLETE:
+                    return target == REFUND || target == FRAUD;
+                case TIMEOUT:
+                    return target == COMPLETE || target == ERROR || target == FRAUD;
+                default:
+                    return false;
+            }
+        }
     }
 
     @Id
@@ -306,43 +345,59 @@ public class Payment implements JpEntity<Long> {
     public Properties getPropertiesAsObj() {
         if (propertiesCache == null) {
             propertiesCache = new Properties();
-            try {
-                propertiesCache.load(new StringReader(String.valueOf(getProperties())));
-            } catch (IOException ex) {
-                LoggerFactory.getLogger(getClass()).error(ex.getMessage(), ex);
-            }
+            propertiesCache.putAll(PropertiesCodec.decode(getProperties()));
         }
         return propertiesCache;
     }
 
     /**
-     * Get additional properties associated with transaction and compatible with java Properties.
+     * Get single additional property without parsing all properties.
+     *
+     * @return Property value or null
+     */
+    public String getProperty(String key) {
+        if (propertiesCache != null) {
+            return propertiesCache.getProperty(key);
+        }
+        return PropertiesCodec.get(getProperties(), key);
+    }
+
+    /**
+     * Get additional properties associated with transaction in {@link PropertiesCodec} format.
+     * Old records may still contain java Properties format.
      */
     public String getProperties() {
         return properties;
     }
 
     /**
-     * Set additional properties associated with transaction and compatible with java Properties.
+     * Set additional properties associated with transaction
+     * in {@link PropertiesCodec} or java Properties format.
      */
     public void setProperties(String properties) {
         this.properties = properties;
+        this.propertiesCache = null;
     }
 
     /**
      * Set additional properties associated with transaction.
      */
-    public void setProperties(Properties properties) {
-        StringWriter sw = new StringWriter();
+    public void setProperties(Map<?, ?> properties) {
+        setProperties(PropertiesCodec.encode(properties));
+    }
 
-        try {
-            properties.store(sw, getClass().getName() + " generated properties");
-        } catch (IOException ex) {
-            LoggerFactory.getLogger(getClass()).error(ex.getMessage(), ex);
+    /**
+     * Convert properties stored in java Properties format to compact format.
+     *
+     * @return true if properties were changed
+     */
+    public boolean migrateProperties() {
+        String migrated = PropertiesCodec.migrate(properties);
+        if (migrated == properties) {
+            return false;
         }
-
-        setProperties(sw.getBuffer().toString());
-        this.propertiesCache = properties;
+        this.properties = migrated;
+        return true;
     }
 
 }
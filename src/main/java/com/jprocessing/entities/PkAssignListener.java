@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.entities;
+
+import javax.persistence.PrePersist;
+
+/**
+ * Entity listener that assigns primary key from PkGenerator
+ * to entities with Long primary key before they will be persisted.
+ * Primary keys that were set manually are never overwritten.
+ *
+ * @see PkGenerator
+ *
+ * @author rumatoest
+ */
+public class PkAssignListener {
+
+    @PrePersist
+    public void assignPk(Object entity) {
+        assign(entity);
+    }
+
+    /**
+     * Assign new primary key to entity if it has not been set yet.
+     * Could be used for entities that are written bypassing persistence context.
+     *
+     * @return true if new primary key was assigned
+     */
+    @SuppressWarnings("unchecked")
+    public static boolean assign(Object entity) {
+        if (entity instanceof JpEntity) {
+            JpEntity<Long> e = (JpEntity<Long>)entity;
+            if (e.getPk() == null) {
+                e.setPk(PkGenerator.getDefault().next());
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.entities;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generates time ordered 64 bit primary keys without database round trips.
+ * Key layout is: 41 bits of milliseconds since 2014-01-01 UTC, 10 bits of node id
+ * and 12 bits of sequence inside one millisecond.
+ * Keys generated by one node are strictly increasing, keys from different nodes are
+ * roughly ordered by time, which keeps B-tree indexes append only.
+ *
+ * Each application node sharing same database must have unique node id.
+ * Default node id is taken from "jprocessing.pk.node" system property,
+ * single node installation should set it to 0. If property is missing node id 0
+ * is used with warning, invalid property value fails generator initialization.
+ *
+ * @author rumatoest
+ */
+public class PkGenerator {
+
+    /**
+     * Custom epoch (2014-01-01 00:00:00 UTC) in milliseconds
+     */
+    public static final long EPOCH;
+
+    static {
+        Calendar c = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        c.clear();
+        c.set(2014, Calendar.JANUARY, 1);
+        EPOCH = c.getTimeInMillis();
+    }
+
+    public static final int NODE_BITS = 10;
+
+    public static final int SEQUENCE_BITS = 12;
+
+    public static final int MAX_NODE = (1 << NODE_BITS) - 1;
+
+    private static final int SEQUENCE_MASK = (1 << SEQUENCE_BITS) - 1;
+
+    /**
+     * System property with default generator node id
+     */
+    public static final String NODE_PROPERTY = "jprocessing.pk.node";
+
+    private static final Logger logger = LoggerFactory.getLogger(PkGenerator.class);
+
+    private static final PkGenerator defaultGenerator = new PkGenerator(defaultNode());
+
+    private static int defaultNode() {
+        String value = System.getProperty(NODE_PROPERTY);
+        if (value == null) {
+            logger.warn("System property {} is not set, primary key node id 0 is used. "
+                + "Every node sharing database must have unique node id", NODE_PROPERTY);
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalStateException("System property " + NODE_PROPERTY + " is not a number: " + value, ex);
+        }
+    }
+
+    /**
+     * Return shared generator configured with default node id.
+     */
+    public static PkGenerator getDefault() {
+        return defaultGenerator;
+    }
+
+    private final long node;
+
+    /**
+     * Last used timestamp (relative to EPOCH).
+     * May be ahead of real clock if sequence was exhausted or clock moved backwards.
+     */
+    private long lastTime = -1;
+
+    private int sequence = 0;
+
+    public PkGenerator(int node) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("Node id must be in range 0.." + MAX_NODE + ": " + node);
+        }
+        this.node = node;
+    }
+
+    /**
+     * Return node id of this generator
+     */
+    public int getNode() {
+        return (int)node;
+    }
+
+    /**
+     * Generate next primary key.
+     * Never blocks: when clock moves backwards or more than 4096 keys were requested
+     * in one millisecond, generator borrows time from the future.
+     */
+    public synchronized long next() {
+        long now = System.currentTimeMillis() - EPOCH;
+        if (now > lastTime) {
+            lastTime = now;
+            sequence = 0;
+        } else {
+            sequence = (sequence + 1) & SEQUENCE_MASK;
+            if (sequence == 0) {
+                lastTime++;
+            }
+        }
+        return (lastTime << (NODE_BITS + SEQUENCE_BITS)) | (node << SEQUENCE_BITS) | sequence;
+    }
+
+    /**
+     * Extract generation timestamp (in milliseconds since 1970) from primary key.
+     */
+    public static long getTimestamp(long pk) {
+        return (pk >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH;
+    }
+}
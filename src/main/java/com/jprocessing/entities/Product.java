@@ -21,8 +21,11 @@
  */
 package com.jprocessing.entities;
 
+import java.util.Calendar;
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
 import javax.persistence.Id;
@@ -37,6 +40,8 @@ import javax.persistence.Table;
  * @author rumatoest
  */
 @Entity
+@Cacheable
+@EntityListeners(PkAssignListener.class)
 @Table(name = "jp_products",
     indexes = {
         @Index(columnList = "sku"),
@@ -218,6 +223,50 @@ public class Product implements JpEntity<Long> {
         this.billAtMonthBeginning = billAtMonthBeginning;
     }
 
+    /**
+     * Calculate time of the next subscription bill.
+     * Adds subscription period to previous billing time, if product is billed at month
+     * beginning result is moved to the first day of its month (or of the next month
+     * when it would not be after previous billing time).
+     *
+     * @param previous Previous billing (or subscription start) time
+     * @return New calendar instance
+     * @throws IllegalStateException If product has no subscription
+     */
+    public Calendar nextBillingTime(Calendar previous) {
+        if (!hasSubscription() || subscriptionPeriod < 1) {
+            throw new IllegalStateException("Product " + sku + " has no subscription period");
+        }
+        Calendar next = (Calendar)previous.clone();
+        switch (subscriptionType) {
+            case DAY:
+                next.add(Calendar.DAY_OF_MONTH, subscriptionPeriod);
+                break;
+            case WEEK:
+                next.add(Calendar.WEEK_OF_YEAR, subscriptionPeriod);
+                break;
+            case MONTH:
+                next.add(Calendar.MONTH, subscriptionPeriod);
+                break;
+            case YEAR:
+                next.add(Calendar.YEAR, subscriptionPeriod);
+                break;
+            default:
+                throw new IllegalStateException("Unsupported subscription type " + subscriptionType);
+        }
+        if (billAtMonthBeginning) {
+            next.set(Calendar.DAY_OF_MONTH, 1);
+            next.set(Calendar.HOUR_OF_DAY, 0);
+            next.set(Calendar.MINUTE, 0);
+            next.set(Calendar.SECOND, 0);
+            next.set(Calendar.MILLISECOND, 0);
+            if (!next.after(previous)) {
+                next.add(Calendar.MONTH, 1);
+            }
+        }
+        return next;
+    }
+
     @Column(name = "name", length = 90, nullable = false)
     private String name;
 
@@ -24,8 +24,10 @@ package com.jprocessing.entities;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
 import javax.persistence.Id;
@@ -33,6 +35,7 @@ import javax.persistence.JoinColumn;
 import javax.persistence.Lob;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
+import javax.persistence.Transient;
 import org.apache.commons.lang3.StringUtils;
 
 /**
@@ -41,6 +44,8 @@ import org.apache.commons.lang3.StringUtils;
  * @author rumatoest
  */
 @Entity
+@Cacheable
+@EntityListeners(PkAssignListener.class)
 @Table(name = "jp_products_prices")
 public class ProductPrice implements JpEntity<Long> {
 
@@ -155,6 +160,7 @@ public class ProductPrice implements JpEntity<Long> {
     @Column(name = "groups", nullable = false)
     private String groups = "";
 
+    @Transient
     private Set<String> groupsSet;
 
     /**
@@ -163,14 +169,23 @@ public class ProductPrice implements JpEntity<Long> {
      */
     public Set<String> getGroups() {
         if (this.groupsSet == null) {
-            if (this.groups == null) {
-                groupsSet = Collections.EMPTY_SET;
+            if (StringUtils.isBlank(this.groups)) {
+                this.groupsSet = Collections.EMPTY_SET;
+            } else {
+                this.groupsSet = new HashSet<>(java.util.Arrays.asList(this.groups.split(",")));
             }
-            this.groupsSet = new HashSet<>(java.util.Arrays.asList(this.groups.split(",")));
         }
         return groupsSet;
     }
 
+    /**
+     * Return comma separated string with group names.
+     * Empty string mean apply to all groups.
+     */
+    public String getGroupsString() {
+        return groups;
+    }
+
     /**
      * Set comma separated string with group names.
      * Preferred for system usage only.
@@ -197,7 +212,7 @@ public class ProductPrice implements JpEntity<Long> {
             if (g.isEmpty()) {
                 continue;
             }
-            if (sb.length() > 1) {
+            if (sb.length() > 0) {
                 sb.append(",");
             }
             sb.append(g);
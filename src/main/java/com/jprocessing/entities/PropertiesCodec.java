@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.entities;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Compact text format for key/value properties stored in one column.
+ * Format is header {@value #HEADER} followed by entries sorted by key,
+ * each entry is key length, colon, key, value length, colon, value.
+ * For example {@code jp1;3:foo3:bar}.
+ *
+ * Single value can be read directly from stored string without parsing other entries.
+ * Strings written with {@link Properties#store} (legacy format) are still readable,
+ * but they are parsed completely.
+ *
+ * @author rumatoest
+ */
+public final class PropertiesCodec {
+
+    public static final String HEADER = "jp1;";
+
+    private PropertiesCodec() {
+    }
+
+    /**
+     * Return true if data is in compact format
+     */
+    public static boolean isCompact(String data) {
+        return data != null && data.startsWith(HEADER);
+    }
+
+    /**
+     * Encode properties to compact format.
+     * Output does not depend on map iteration order, so equal maps give equal strings.
+     *
+     * @return Encoded string or null if properties are null
+     */
+    public static String encode(Map<?, ?> properties) {
+        if (properties == null) {
+            return null;
+        }
+        SortedMap<String, String> sorted = new TreeMap<>();
+        for (Map.Entry<?, ?> e : properties.entrySet()) {
+            if (e.getKey() != null && e.getValue() != null) {
+                sorted.put(e.getKey().toString(), e.getValue().toString());
+            }
+        }
+        StringBuilder sb = new StringBuilder(HEADER.length() + sorted.size() * 24);
+        sb.append(HEADER);
+        for (Map.Entry<String, String> e : sorted.entrySet()) {
+            sb.append(e.getKey().length()).append(':').append(e.getKey());
+            sb.append(e.getValue().length()).append(':').append(e.getValue());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Decode properties from compact or legacy format.
+     *
+     * @return Sorted properties, empty if data is null
+     */
+    public static SortedMap<String, String> decode(String data) {
+        SortedMap<String, String> result = new TreeMap<>();
+        if (data == null) {
+            return result;
+        }
+        if (!isCompact(data)) {
+            for (Map.Entry<Object, Object> e : parseLegacy(data).entrySet()) {
+                result.put(e.getKey().toString(), e.getValue().toString());
+            }
+            return result;
+        }
+        int pos = HEADER.length();
+        while (pos < data.length()) {
+            int klen = readLength(data, pos);
+            int kstart = data.indexOf(':', pos) + 1;
+            int vpos = kstart + klen;
+            int vlen = readLength(data, vpos);
+            int vstart = data.indexOf(':', vpos) + 1;
+            result.put(data.substring(kstart, vpos), data.substring(vstart, vstart + vlen));
+            pos = vstart + vlen;
+        }
+        return result;
+    }
+
+    /**
+     * Read single property value.
+     * For compact data only key lengths are parsed until key is found,
+     * value is the only string allocated.
+     *
+     * @return Property value or null if there is no such property
+     */
+    public static String get(String data, String key) {
+        if (data == null || key == null) {
+            return null;
+        }
+        if (!isCompact(data)) {
+            return parseLegacy(data).getProperty(key);
+        }
+        int pos = HEADER.length();
+        while (pos < data.length()) {
+            int klen = readLength(data, pos);
+            int kstart = data.indexOf(':', pos) + 1;
+            int vpos = kstart + klen;
+            int vlen = readLength(data, vpos);
+            int vstart = data.indexOf(':', vpos) + 1;
+            int cmp = compare(data, kstart, klen, key);
+            if (cmp == 0) {
+                return data.substring(vstart, vstart + vlen);
+            }
+            if (cmp > 0) {
+                // keys are sorted, there is no such key further
+                return null;
+            }
+            pos = vstart + vlen;
+        }
+        return null;
+    }
+
+    /**
+     * Convert legacy data to compact format.
+     *
+     * @return Compact data, same instance if data is null or already compact
+     */
+    public static String migrate(String data) {
+        if (data == null || isCompact(data)) {
+            return data;
+        }
+        return encode(parseLegacy(data));
+    }
+
+    /**
+     * Compare stored key with provided one in the same way as String.compareTo
+     */
+    private static int compare(String data, int start, int len, String key) {
+        int n = Math.min(len, key.length());
+        for (int i = 0; i < n; i++) {
+            int d = data.charAt(start + i) - key.charAt(i);
+            if (d != 0) {
+                return d;
+            }
+        }
+        return len - key.length();
+    }
+
+    private static int readLength(String data, int pos) {
+        int len = 0;
+        for (int i = pos; i < data.length(); i++) {
+            char c = data.charAt(i);
+            if (c == ':') {
+                return len;
+            }
+            if (c < '0' || c > '9') {
+                break;
+            }
+            len = len * 10 + (c - '0');
+        }
+        throw new IllegalArgumentException("Malformed properties at position " + pos);
+    }
+
+    private static Properties parseLegacy(String data) {
+        Properties p = new Properties();
+        try {
+            p.load(new StringReader(data));
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Can not parse properties", ex);
+        }
+        return p;
+    }
+}
@@ -21,10 +21,19 @@
  */
 package com.jprocessing.entities;
 
+import java.math.BigDecimal;
+import java.util.Calendar;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
+import javax.persistence.FetchType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
 import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
 
 /**
  * If customer want to receive a product (actually a service) continuously,
@@ -34,7 +43,11 @@ import javax.persistence.Table;
  * @author rumatoest
  */
 @Entity
-@Table(name = "jp_subscriptions")
+@EntityListeners(PkAssignListener.class)
+@Table(name = "jp_subscriptions",
+    indexes = {
+        @Index(columnList = "next_billing_time"),
+        @Index(columnList = "customer_id")})
 public class Subscription implements JpEntity<Long> {
 
     private static final long serialVersionUID = -8396520859757389216L;
@@ -53,4 +66,110 @@ public class Subscription implements JpEntity<Long> {
         this.pk = primaryKey;
     }
 
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "customer_id", nullable = false)
+    private Customer customer;
+
+    /**
+     * Return subscribed customer
+     */
+    public Customer getCustomer() {
+        return customer;
+    }
+
+    /**
+     * Set subscribed customer
+     */
+    public void setCustomer(Customer customer) {
+        this.customer = customer;
+    }
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "product_id", nullable = false)
+    private Product product;
+
+    /**
+     * Return subscription product, it defines billing period
+     */
+    public Product getProduct() {
+        return product;
+    }
+
+    /**
+     * Set subscription product, it must have subscription type
+     */
+    public void setProduct(Product product) {
+        this.product = product;
+    }
+
+    @Column(name = "quantity", precision = 19, scale = 4, nullable = false)
+    private BigDecimal quantity = BigDecimal.ONE;
+
+    /**
+     * Return product quantity billed each period
+     */
+    public BigDecimal getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Set product quantity billed each period
+     */
+    public void setQuantity(BigDecimal quantity) {
+        this.quantity = quantity;
+    }
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "start_time", nullable = false)
+    private Calendar startTime;
+
+    /**
+     * Return time when subscription was created
+     */
+    public Calendar getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Set time when subscription was created
+     */
+    public void setStartTime(Calendar startTime) {
+        this.startTime = startTime;
+    }
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "next_billing_time", nullable = false)
+    private Calendar nextBillingTime;
+
+    /**
+     * Return time when next bill for this subscription should be generated
+     */
+    public Calendar getNextBillingTime() {
+        return nextBillingTime;
+    }
+
+    /**
+     * Set time when next bill for this subscription should be generated
+     */
+    public void setNextBillingTime(Calendar nextBillingTime) {
+        this.nextBillingTime = nextBillingTime;
+    }
+
+    @Column(name = "active", nullable = false)
+    private boolean active = true;
+
+    /**
+     * Only active subscriptions are billed
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Activate or cancel subscription
+     */
+    public void setActive(boolean active) {
+        this.active = active;
+    }
+
 }
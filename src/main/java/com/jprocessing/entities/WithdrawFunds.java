@@ -23,6 +23,7 @@ package com.jprocessing.entities;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.FetchType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
@@ -35,6 +36,7 @@ import javax.persistence.Table;
  * @author rumatoest
  */
 @Entity
+@EntityListeners(PkAssignListener.class)
 @Table(name = "jp_withdraw")
 public class WithdrawFunds implements JpEntity<Long> {
 
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.cache;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author rumatoest
+ */
+public class BloomFilterTest {
+
+    @Test
+    public void addedKeysAreFound() {
+        BloomFilter f = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            f.add("key-" + i);
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(f.mightContain("key-" + i));
+        }
+    }
+
+    @Test
+    public void falsePositiveRateIsNearConfigured() {
+        BloomFilter f = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 9999; i++) {
+            f.add("key-" + i);
+        }
+        int positives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (f.mightContain("other-" + i)) {
+                positives++;
+            }
+        }
+        assertTrue("False positives " + positives, positives < 2000);
+    }
+
+    @Test
+    public void oldGenerationsAreForgotten() {
+        BloomFilter f = new BloomFilter(100, 0.001);
+        f.add("old");
+        for (int i = 0; i < 99; i++) {
+            f.add("a-" + i);
+        }
+        // "old" is in previous generation now
+        assertTrue(f.mightContain("old"));
+        for (int i = 0; i < 100; i++) {
+            f.add("b-" + i);
+        }
+        assertFalse(f.mightContain("old"));
+    }
+
+    @Test
+    public void clearRemovesKeys() {
+        BloomFilter f = new BloomFilter(100, 0.01);
+        f.add("a");
+        f.clear();
+        assertFalse(f.mightContain("a"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidRate() {
+        new BloomFilter(100, 1);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.core.invoice;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ *
+ * @author rumatoest
+ */
+public class InvoiceCalculatorTest {
+
+    @Test
+    public void divideMatchesBigDecimalRounding() {
+        long[] values = {0, 1, 5, 14, 15, 16, 25, 35, -1, -5, -14, -15, -16, -25, 1234567, -1234567};
+        for (RoundingMode mode : RoundingMode.values()) {
+            if (mode == RoundingMode.UNNECESSARY) {
+                continue;
+            }
+            for (long v : values) {
+                long expected = BigDecimal.valueOf(v).divide(BigDecimal.TEN, 0, mode).longValueExact();
+                assertEquals(mode + " " + v, expected, InvoiceCalculator.divide(v, 10, mode));
+            }
+        }
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void divideWithRemainderRequiresRounding() {
+        InvoiceCalculator.divide(15, 10, RoundingMode.UNNECESSARY);
+    }
+
+    @Test
+    public void divideExactDoesNotRound() {
+        assertEquals(3, InvoiceCalculator.divide(30, 10, RoundingMode.UNNECESSARY));
+    }
+
+    @Test
+    public void toFixedUsesValueScale() {
+        assertEquals(15000, InvoiceCalculator.toFixed(new BigDecimal("1.5")));
+        assertEquals(12345, InvoiceCalculator.toFixed(new BigDecimal("1.2345")));
+        assertEquals(-10000, InvoiceCalculator.toFixed(new BigDecimal("-1")));
+        assertEquals(1000000, InvoiceCalculator.toFixed(new BigDecimal("1E+2")));
+        assertEquals(0, InvoiceCalculator.toFixed(BigDecimal.ZERO));
+    }
+
+    @Test
+    public void toFixedRejectsNotRepresentableValues() {
+        assertEquals(Long.MIN_VALUE, InvoiceCalculator.toFixed(new BigDecimal("1.23456")));
+        assertEquals(Long.MIN_VALUE, InvoiceCalculator.toFixed(new BigDecimal("1E+20")));
+        assertEquals(Long.MIN_VALUE, InvoiceCalculator.toFixed(new BigDecimal("12345678901234567890")));
+    }
+
+    @Test
+    public void lineTotalRoundsToCurrencyScale() {
+        InvoiceCalculator c = new InvoiceCalculator();
+        assertEquals(new BigDecimal("3.71"), c.lineTotal(new BigDecimal("1.2355"), new BigDecimal("3"), "USD"));
+        assertEquals(new BigDecimal("4"), c.lineTotal(new BigDecimal("1.25"), new BigDecimal("3"), "JPY"));
+        c.setRounding("USD", RoundingMode.DOWN);
+        assertEquals(new BigDecimal("3.70"), c.lineTotal(new BigDecimal("1.2355"), new BigDecimal("3"), "USD"));
+        assertEquals(370, c.lineTotalMinor(new BigDecimal("1.2355"), new BigDecimal("3"), "USD"));
+    }
+
+    @Test
+    public void lineTotalFallsBackToBigDecimal() {
+        InvoiceCalculator c = new InvoiceCalculator();
+        BigDecimal price = new BigDecimal("12345678901.23");
+        BigDecimal quantity = new BigDecimal("1000.5");
+        assertEquals(price.multiply(quantity).setScale(2, RoundingMode.HALF_UP), c.lineTotal(price, quantity, "USD"));
+    }
+
+    @Test
+    public void unitPriceDropsBinaryNoise() {
+        InvoiceCalculator c = new InvoiceCalculator();
+        assertEquals(new BigDecimal("19.9900"), c.unitPrice(19.990000000000002, "USD"));
+        assertEquals(new BigDecimal("0.1235"), c.unitPrice(0.12345, "USD"));
+    }
+}
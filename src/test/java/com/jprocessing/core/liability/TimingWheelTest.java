@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.core.liability;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author rumatoest
+ */
+public class TimingWheelTest {
+
+    @Test
+    public void firesAtDeadlineTick() {
+        TimingWheel<String> w = new TimingWheel<>(10, 1000);
+        assertTrue(w.schedule("a", 1015));
+        assertTrue(w.advance(1019).isEmpty());
+        assertEquals(Collections.singletonList("a"), w.advance(1020));
+        assertEquals(0, w.size());
+    }
+
+    @Test
+    public void rejectsPassedDeadline() {
+        TimingWheel<String> w = new TimingWheel<>(10, 1000);
+        assertFalse(w.schedule("a", 1000));
+        assertFalse(w.schedule("b", 990));
+        assertEquals(0, w.size());
+    }
+
+    @Test
+    public void cascadesFromUpperLevels() {
+        TimingWheel<Long> w = new TimingWheel<>(1, 0);
+        // deadlines on levels 0..3 and on slot borders of each level
+        long[] deadlines = {1, 63, 64, 65, 100, 4095, 4096, 4097, 10000, 262143, 262144, 300000};
+        for (long d : deadlines) {
+            assertTrue(w.schedule(d, d));
+        }
+        assertEquals(deadlines.length, w.size());
+
+        List<Long> fired = new ArrayList<>();
+        for (long now = 1; now <= 300000; now++) {
+            for (Long d : w.advance(now)) {
+                assertEquals("fired at wrong time", d.longValue(), now);
+                fired.add(d);
+            }
+        }
+        assertEquals(deadlines.length, fired.size());
+        assertEquals(0, w.size());
+    }
+
+    @Test
+    public void largeAdvanceReturnsItemsInDeadlineOrder() {
+        TimingWheel<Long> w = new TimingWheel<>(5, 0);
+        Random r = new Random(7);
+        Long[] deadlines = new Long[1000];
+        for (int i = 0; i < deadlines.length; i++) {
+            // multiples of tick, so tick resolution does not mix order
+            deadlines[i] = 5L * (1 + r.nextInt(100000));
+            w.schedule(deadlines[i], deadlines[i]);
+        }
+        List<Long> fired = new ArrayList<>();
+        fired.addAll(w.advance(250000));
+        fired.addAll(w.advance(500000));
+        List<Long> expected = new ArrayList<>(Arrays.asList(deadlines));
+        Collections.sort(expected);
+        assertEquals(expected, fired);
+    }
+
+    @Test
+    public void clearRemovesItems() {
+        TimingWheel<String> w = new TimingWheel<>(1, 0);
+        w.schedule("a", 5000);
+        w.clear();
+        assertEquals(0, w.size());
+        assertTrue(w.advance(10000).isEmpty());
+    }
+}
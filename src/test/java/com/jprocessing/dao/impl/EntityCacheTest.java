@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.dao.impl;
+
+import com.jprocessing.dao.Restriction;
+import com.jprocessing.dao.UnitOfWork;
+import com.jprocessing.entities.Category;
+import com.jprocessing.entities.Customer;
+import com.jprocessing.entities.Product;
+import java.util.Collections;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import net.sf.ehcache.config.CacheConfiguration;
+import org.hibernate.cache.ehcache.internal.regions.EhcacheDataRegion;
+import org.hibernate.cache.spi.access.EntityRegionAccessStrategy;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.jpa.HibernateEntityManagerFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Second level cache behaviour of DAOs against in-memory database.
+ *
+ * @author rumatoest
+ */
+public class EntityCacheTest {
+
+    private EntityManagerFactory emf;
+
+    private SessionFactoryImplementor sessionFactory;
+
+    private Statistics stats;
+
+    private ProductDaoImpl productDao;
+
+    @Before
+    public void setUp() {
+        emf = Persistence.createEntityManagerFactory("jprocessing-test");
+        sessionFactory = (SessionFactoryImplementor)((HibernateEntityManagerFactory)emf).getSessionFactory();
+        stats = sessionFactory.getStatistics();
+        productDao = new ProductDaoImpl(emf);
+
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        for (long i = 1; i <= 3; i++) {
+            Product p = new Product();
+            p.setPk(i);
+            p.setSku("SKU-" + i);
+            p.setName("Product " + i);
+            em.persist(p);
+        }
+        Category c = new Category();
+        c.setPk(1L);
+        em.persist(c);
+        em.getTransaction().commit();
+        em.close();
+
+        emf.getCache().evictAll();
+        stats.clear();
+    }
+
+    @After
+    public void tearDown() {
+        emf.close();
+    }
+
+    @Test
+    public void secondLoadIsServedFromCache() {
+        productDao.getByPk(1L);
+        assertEquals(1, stats.getPrepareStatementCount());
+        assertTrue(emf.getCache().contains(Product.class, 1L));
+
+        Product p = productDao.getByPk(1L);
+        assertEquals("Product 1", p.getName());
+        assertEquals(1, stats.getPrepareStatementCount());
+        assertEquals(1, stats.getSecondLevelCacheHitCount());
+    }
+
+    @Test
+    public void evictCacheRemovesEntities() {
+        productDao.getByPk(1L);
+        productDao.getByPk(2L);
+
+        productDao.evictCache(1L);
+        assertFalse(emf.getCache().contains(Product.class, 1L));
+        assertTrue(emf.getCache().contains(Product.class, 2L));
+
+        productDao.evictCache();
+        assertFalse(emf.getCache().contains(Product.class, 2L));
+
+        productDao.getByPk(1L);
+        assertEquals(3, stats.getPrepareStatementCount());
+    }
+
+    @Test
+    public void updateWhereEvictsUpdatedType() {
+        productDao.getByPk(1L);
+        productDao.getByPk(2L);
+
+        int updated = productDao.updateWhere(Collections.singletonMap("name", "Renamed"), new Restriction<Product>() {
+
+            @Override
+            public Predicate[] build(CriteriaBuilder cb, Root<Product> root) {
+                return new Predicate[]{cb.equal(root.get("pk"), 1L)};
+            }
+        });
+        assertEquals(1, updated);
+        assertFalse(emf.getCache().contains(Product.class, 1L));
+        assertEquals("Renamed", productDao.getByPk(1L).getName());
+        assertEquals("Product 2", productDao.getByPk(2L).getName());
+    }
+
+    @Test
+    public void upsertEvictsAfterCommit() {
+        productDao.setUpsertDialect(UpsertDialect.H2);
+        final Product p = productDao.getByPk(1L);
+        p.setName("Upserted");
+
+        new UnitOfWork(emf).run(new Runnable() {
+
+            @Override
+            public void run() {
+                productDao.persistOrMerge(p);
+            }
+        });
+        assertFalse(emf.getCache().contains(Product.class, 1L));
+        assertEquals("Upserted", productDao.getByPk(1L).getName());
+
+        p.setName("Upserted again");
+        productDao.persistOrMergeAll(Collections.singletonList(p));
+        assertFalse(emf.getCache().contains(Product.class, 1L));
+        assertEquals("Upserted again", productDao.getByPk(1L).getName());
+    }
+
+    @Test
+    public void categoryCacheIsReadOnly() {
+        CategoryDaoImpl categoryDao = new CategoryDaoImpl(emf);
+        categoryDao.getByPk(1L);
+        assertTrue(emf.getCache().contains(Category.class, 1L));
+
+        EntityRegionAccessStrategy access = sessionFactory.getEntityPersister(Category.class.getName())
+            .getCacheAccessStrategy();
+        try {
+            access.update(1L, new Object(), null, null);
+            fail("Read-only cache accepted update");
+        } catch (UnsupportedOperationException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void shippedRegionsAreConfigured() {
+        assertEquals(3600, regionConfig(Category.class).getTimeToLiveSeconds());
+        assertEquals(10000, regionConfig(Customer.class).getMaxElementsInMemory());
+        assertEquals(10000, regionConfig(Product.class).getMaxElementsInMemory());
+        assertEquals(600, regionConfig(Product.class).getTimeToLiveSeconds());
+    }
+
+    private CacheConfiguration regionConfig(Class<?> entityClass) {
+        EhcacheDataRegion region = (EhcacheDataRegion)sessionFactory.getSecondLevelCacheRegion(entityClass.getName());
+        return region.getEhcache().getCacheConfiguration();
+    }
+}
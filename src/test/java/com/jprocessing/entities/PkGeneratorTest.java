@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.entities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author rumatoest
+ */
+public class PkGeneratorTest {
+
+    @Test
+    public void bitLayout() {
+        PkGenerator g = new PkGenerator(PkGenerator.MAX_NODE);
+        long before = System.currentTimeMillis();
+        long pk = g.next();
+        long after = System.currentTimeMillis();
+
+        assertTrue(pk > 0);
+        long node = (pk >>> PkGenerator.SEQUENCE_BITS) & PkGenerator.MAX_NODE;
+        assertEquals(PkGenerator.MAX_NODE, node);
+        long ts = PkGenerator.getTimestamp(pk);
+        assertTrue(ts >= before && ts <= after);
+        assertEquals(0, pk & ((1 << PkGenerator.SEQUENCE_BITS) - 1));
+    }
+
+    @Test
+    public void nodeIdDoesNotOverlapOtherFields() {
+        long a = new PkGenerator(0).next();
+        long b = new PkGenerator(1).next();
+        assertEquals(0, (a >>> PkGenerator.SEQUENCE_BITS) & PkGenerator.MAX_NODE);
+        assertEquals(1, (b >>> PkGenerator.SEQUENCE_BITS) & PkGenerator.MAX_NODE);
+    }
+
+    @Test
+    public void keysAreStrictlyIncreasing() {
+        PkGenerator g = new PkGenerator(3);
+        long last = g.next();
+        // more keys than sequence allows in one millisecond
+        for (int i = 0; i < 100000; i++) {
+            long pk = g.next();
+            assertTrue(pk > last);
+            assertEquals(3, (pk >>> PkGenerator.SEQUENCE_BITS) & PkGenerator.MAX_NODE);
+            last = pk;
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeNode() {
+        new PkGenerator(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooLargeNode() {
+        new PkGenerator(PkGenerator.MAX_NODE + 1);
+    }
+}
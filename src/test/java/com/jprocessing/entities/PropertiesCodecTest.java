@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2014 Vladislav Zablotsky
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.jprocessing.entities;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author rumatoest
+ */
+public class PropertiesCodecTest {
+
+    @Test
+    public void roundTrip() {
+        Map<String, String> p = new HashMap<>();
+        p.put("b", "2");
+        p.put("a", "first");
+        p.put("with:colon", "12:34");
+        p.put("digits", "123");
+        p.put("empty", "");
+        p.put("unicode", "\u0446\u0435\u043d\u0430 \u20ac");
+        String data = PropertiesCodec.encode(p);
+        assertTrue(PropertiesCodec.isCompact(data));
+        assertEquals(new TreeMap<>(p), PropertiesCodec.decode(data));
+        for (Map.Entry<String, String> e : p.entrySet()) {
+            assertEquals(e.getValue(), PropertiesCodec.get(data, e.getKey()));
+        }
+        assertNull(PropertiesCodec.get(data, "missing"));
+        assertNull(PropertiesCodec.get(data, "0"));
+        assertNull(PropertiesCodec.get(data, "zzz"));
+    }
+
+    @Test
+    public void encodingDoesNotDependOnOrder() {
+        Map<String, String> a = new LinkedHashMap<>();
+        a.put("x", "1");
+        a.put("y", "2");
+        Map<String, String> b = new LinkedHashMap<>();
+        b.put("y", "2");
+        b.put("x", "1");
+        assertEquals(PropertiesCodec.encode(a), PropertiesCodec.encode(b));
+        assertEquals(PropertiesCodec.HEADER + "1:x1:11:y1:2", PropertiesCodec.encode(a));
+    }
+
+    @Test
+    public void emptyAndNull() {
+        assertNull(PropertiesCodec.encode(null));
+        assertTrue(PropertiesCodec.decode(null).isEmpty());
+        String empty = PropertiesCodec.encode(new HashMap<String, String>());
+        assertEquals(PropertiesCodec.HEADER, empty);
+        assertTrue(PropertiesCodec.decode(empty).isEmpty());
+        assertNull(PropertiesCodec.get(empty, "a"));
+    }
+
+    @Test
+    public void legacyFormatIsReadable() throws Exception {
+        Properties p = new Properties();
+        p.setProperty("key", "value = 1");
+        p.setProperty("other", "x");
+        java.io.StringWriter w = new java.io.StringWriter();
+        p.store(w, null);
+        String legacy = w.toString();
+
+        assertFalse(PropertiesCodec.isCompact(legacy));
+        assertEquals("value = 1", PropertiesCodec.get(legacy, "key"));
+        assertEquals(2, PropertiesCodec.decode(legacy).size());
+
+        String migrated = PropertiesCodec.migrate(legacy);
+        assertTrue(PropertiesCodec.isCompact(migrated));
+        assertEquals(PropertiesCodec.decode(legacy), PropertiesCodec.decode(migrated));
+        assertSame(migrated, PropertiesCodec.migrate(migrated));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void malformedDataFails() {
+        PropertiesCodec.decode(PropertiesCodec.HEADER + "x:y");
+    }
+}